@@ -0,0 +1,90 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * In-memory H2 database with the same tables as the tests. The users table is filled once per trial.
+ * The orders table is emptied before each iteration, so it doesn't grow forever.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+    
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    @Param({"1000", "100000"})
+    public int rows;
+    
+    @Param({"UNIQUE", "REPEATED", "MOSTLY_INVALID"})
+    public NameDistribution distribution;
+    
+    public Connection connection;
+    
+    /** The content of the users table, for benchmarks which don't want to read it from the database. */
+    public List<User> users;
+    /** One order for each user with a valid name. */
+    public List<Order> orders;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        var url = "jdbc:h2:mem:benchmark" + COUNTER.incrementAndGet();
+        connection = DriverManager.getConnection(url, "sa", "");
+        
+        try (var stmt = connection.createStatement()) {
+            stmt.execute("create table users (name varchar(256))");
+            stmt.execute("create table orders (user_name varchar(256))");
+        }
+        
+        var random = new Random(42); // Same data for every run
+        users = new ArrayList<>(rows);
+        orders = new ArrayList<>();
+        try (var stmt = connection.prepareStatement("insert into users (name) values (?)")) {
+            for (int i = 0; i < rows; i++) {
+                var user = new User();
+                user.setName(distribution.name(i, random));
+                users.add(user);
+                
+                if (GoodCode.VALID_ORDER.test(user)) {
+                    var order = new Order();
+                    order.setUser(user);
+                    orders.add(order);
+                }
+                
+                stmt.setString(1, user.getName());
+                stmt.addBatch();
+                if (i % 1000 == 999) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+    
+    @Setup(Level.Iteration)
+    public void clearOrders() throws SQLException {
+        try (var stmt = connection.createStatement()) {
+            stmt.execute("truncate table orders");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+}
@@ -0,0 +1,25 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Common settings for the benchmarks of the fetch, validate and store chain. Each operation
+ * processes the whole users table. We want the throughput and the latency distribution.
+ * The allocation rate comes from "-prof gc" which the benchmark profile passes by default.
+ * 
+ * JMH reads these annotations from the super class.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class ChainBenchmark {
+}
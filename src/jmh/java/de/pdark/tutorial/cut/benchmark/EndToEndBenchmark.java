@@ -0,0 +1,39 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import de.pdark.tutorial.cut.BatchSaveOrder;
+import de.pdark.tutorial.cut.ColumnarGoodCode;
+import de.pdark.tutorial.cut.FetchUserBatches;
+import de.pdark.tutorial.cut.FetchUsers;
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.SaveOrder;
+import de.pdark.tutorial.cut.StreamUsers;
+
+/** The whole chain as GoodCode.create() and GoodCode.createStreaming() would run it. */
+public class EndToEndBenchmark extends ChainBenchmark {
+
+    @Benchmark
+    public void goodCode(BenchmarkDatabase database) {
+        var fetch = new FetchUsers(database.connection);
+        var store = new SaveOrder(database.connection);
+        new GoodCode(fetch, store).doSomethingUseful();
+    }
+
+    @Benchmark
+    public void streamingAndBatches(BenchmarkDatabase database) {
+        var fetch = new StreamUsers(database.connection);
+        try (var store = new BatchSaveOrder(database.connection)) {
+            GoodCode.streaming(fetch, store).doSomethingUseful();
+        }
+    }
+
+    /** No User or Order objects, compare gc.alloc.rate.norm with streamingAndBatches */
+    @Benchmark
+    public void columnar(BenchmarkDatabase database) {
+        var fetch = new FetchUserBatches(database.connection);
+        try (var store = new BatchSaveOrder(database.connection)) {
+            new ColumnarGoodCode(fetch, store::accept).doSomethingUseful();
+        }
+    }
+}
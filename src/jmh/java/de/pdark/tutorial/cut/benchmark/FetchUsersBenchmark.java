@@ -0,0 +1,23 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdark.tutorial.cut.FetchUsers;
+import de.pdark.tutorial.cut.StreamUsers;
+
+/** First link of the chain: Read all users. */
+public class FetchUsersBenchmark extends ChainBenchmark {
+
+    @Benchmark
+    public void fetchUsers(BenchmarkDatabase database, Blackhole blackhole) {
+        blackhole.consume(new FetchUsers(database.connection).get());
+    }
+
+    @Benchmark
+    public void streamUsers(BenchmarkDatabase database, Blackhole blackhole) {
+        try (var users = new StreamUsers(database.connection).get()) {
+            users.forEach(blackhole::consume);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.MemoizingValidator;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * GoodCode.VALID_ORDER with and without MemoizingValidator, without the database. Each operation
+ * validates all users. The validator lives for the whole trial, so this shows the steady state
+ * when the names repeat. UNIQUE shows the cost of the misses.
+ * 
+ * The names are new String instances per user, like the rows from the database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MemoizingValidatorBenchmark {
+
+    @Param({"100000"})
+    public int rows;
+    
+    @Param({"ZIPF", "REPEATED", "UNIQUE"})
+    public NameDistribution distribution;
+    
+    private User[] users;
+    private MemoizingValidator memoized;
+
+    @Setup
+    public void setUp() {
+        var random = new Random(42);
+        users = new User[rows];
+        for (int i = 0; i < rows; i++) {
+            users[i] = new User();
+            var name = distribution.name(i, random);
+            users[i].setName(name == null ? null : new String(name));
+        }
+        memoized = new MemoizingValidator(GoodCode.VALID_ORDER);
+    }
+
+    @Benchmark
+    public void rules(Blackhole blackhole) {
+        for (var user : users) {
+            blackhole.consume(GoodCode.VALID_ORDER.test(user));
+        }
+    }
+
+    @Benchmark
+    public void memoized(Blackhole blackhole) {
+        for (var user : users) {
+            blackhole.consume(memoized.test(user));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openjdk.jol.info.GraphLayout;
+
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.model.NamePool;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Heap needed for the users and the orders of GoodCode, with and without a NamePool. This is what
+ * FetchUsers.namePool() does. Every row gets its own String, just like when the JDBC driver reads it.
+ * 
+ * Not a JMH benchmark since we want the retained size, not the allocation rate. Run it with
+ * 
+ *     mvn -Pbenchmark test-compile exec:exec -Djmh.main=de.pdark.tutorial.cut.benchmark.ModelFootprint -Djmh.args=
+ */
+public class ModelFootprint {
+
+    private static final int ROWS = 100_000;
+
+    public static void main(String[] args) {
+        System.out.printf("%-15s %12s %12s %8s%n", "distribution", "plain", "pooled", "saved");
+        for (var distribution : NameDistribution.values()) {
+            var plain = footprint(distribution, null);
+            var pooled = footprint(distribution, new NamePool());
+            System.out.printf("%-15s %12d %12d %7d%%%n", distribution, plain, pooled, 100 - pooled * 100 / plain);
+        }
+    }
+
+    /** pool can be null */
+    private static long footprint(NameDistribution distribution, NamePool pool) {
+        var random = new Random(42);
+        var users = new ArrayList<User>(ROWS);
+        var orders = new ArrayList<Order>();
+        for (int i = 0; i < ROWS; i++) {
+            var name = distribution.name(i, random);
+            var user = new User();
+            user.setName(pool == null ? name : pool.intern(name));
+            users.add(user);
+            
+            if (GoodCode.isValidName(user.getName())) {
+                var order = new Order();
+                order.setUser(user);
+                orders.add(order);
+            }
+        }
+        // The pool is garbage after the fetch, so it's not part of the footprint
+        return footprint(users, orders);
+    }
+
+    private static long footprint(List<?> users, List<?> orders) {
+        return GraphLayout.parseInstance(users, orders).totalSize();
+    }
+}
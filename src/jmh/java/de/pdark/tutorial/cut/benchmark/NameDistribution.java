@@ -0,0 +1,66 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/** How the names in the users table of the benchmarks look like. */
+public enum NameDistribution {
+    /** Every user has a different, valid name. */
+    UNIQUE {
+        @Override
+        String name(int index, Random random) {
+            return "user" + index;
+        }
+    },
+    /** Only a few different names which are repeated over and over. */
+    REPEATED {
+        @Override
+        String name(int index, Random random) {
+            return "user" + random.nextInt(100);
+        }
+    },
+    /** 10% valid names, the rest is rejected by GoodCode.VALID_ORDER. */
+    MOSTLY_INVALID {
+        private final String[] invalid = { null, "", " ", "\r\n\t", "first last" };
+        
+        @Override
+        String name(int index, Random random) {
+            if (random.nextInt(10) == 0) {
+                return "user" + index;
+            }
+            return invalid[random.nextInt(invalid.length)];
+        }
+    },
+    /**
+     * Zipf distribution (s = 1) over 10,000 names: The most common name appears twice as often
+     * as the second, three times as often as the third and so on. Every tenth name has a space.
+     */
+    ZIPF {
+        private final double[] cumulative = zipf(10_000);
+        
+        @Override
+        String name(int index, Random random) {
+            var rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            if (rank < 0) {
+                rank = -rank - 1;
+            }
+            return rank % 10 == 9 ? "first last" + rank : "user" + rank;
+        }
+    };
+    
+    private static double[] zipf(int size) {
+        var result = new double[size];
+        var sum = 0.0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / (i + 1);
+            result[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            result[i] /= sum;
+        }
+        result[size - 1] = 1.0; // No rounding errors at the end
+        return result;
+    }
+    
+    abstract String name(int index, Random random);
+}
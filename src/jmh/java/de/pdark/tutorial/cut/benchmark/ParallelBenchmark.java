@@ -0,0 +1,30 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdark.tutorial.cut.ParallelGoodCode;
+
+/**
+ * Scaling of ParallelGoodCode over the number of cores. ProcessBenchmark.process() is the
+ * sequential baseline. The machine needs at least 16 cores for meaningful numbers. Example:
+ * 
+ *     -Djmh.args="ParallelBenchmark -p rows=100000 -p distribution=UNIQUE"
+ */
+@State(Scope.Benchmark)
+public class ParallelBenchmark extends ChainBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int parallelism;
+    
+    @Param({"true", "false"})
+    public boolean ordered;
+
+    @Benchmark
+    public void parallel(BenchmarkDatabase database, Blackhole blackhole) {
+        new ParallelGoodCode(() -> database.users, blackhole::consume, parallelism).ordered(ordered).doSomethingUseful();
+    }
+}
@@ -0,0 +1,22 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdark.tutorial.cut.GoodCode;
+
+/** Middle of the chain: Validate the users and create orders. No database involved. */
+public class ProcessBenchmark extends ChainBenchmark {
+
+    @Benchmark
+    public void validOrder(BenchmarkDatabase database, Blackhole blackhole) {
+        for (var user : database.users) {
+            blackhole.consume(GoodCode.VALID_ORDER.test(user));
+        }
+    }
+
+    @Benchmark
+    public void process(BenchmarkDatabase database, Blackhole blackhole) {
+        new GoodCode(() -> database.users, blackhole::consume).doSomethingUseful();
+    }
+}
@@ -0,0 +1,23 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import de.pdark.tutorial.cut.BatchSaveOrder;
+import de.pdark.tutorial.cut.SaveOrder;
+
+/** Last link of the chain: Store the orders for all valid users. */
+public class SaveOrderBenchmark extends ChainBenchmark {
+
+    @Benchmark
+    public void saveOrder(BenchmarkDatabase database) {
+        var tool = new SaveOrder(database.connection);
+        database.orders.forEach(tool);
+    }
+
+    @Benchmark
+    public void batchSaveOrder(BenchmarkDatabase database) {
+        try (var tool = new BatchSaveOrder(database.connection)) {
+            database.orders.forEach(tool);
+        }
+    }
+}
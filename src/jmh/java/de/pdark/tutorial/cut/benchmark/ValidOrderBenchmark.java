@@ -0,0 +1,90 @@
+package de.pdark.tutorial.cut.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.ValidOrderRules;
+import de.pdark.tutorial.cut.model.User;
+import de.pdark.tutorial.cut.rules.RuleSet;
+
+/**
+ * Compares GoodCode.VALID_ORDER with the nested ifs which it replaced and with the same rules in a
+ * RuleSet (ValidOrderRules). Run with -prof gc to see that the old version allocates a String in
+ * trim() for names with leading or trailing whitespace. Run with -t 4 to see how the rule set
+ * behaves when several threads share it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidOrderBenchmark {
+
+    /** The original version of GoodCode.VALID_ORDER */
+    static final Predicate<User> NESTED_IFS = user -> {
+        if (user.getName() != null) {
+            if (user.getName().length() > 0) {
+                if (user.getName().trim().length() > 0) {
+                    if (!user.getName().contains(" ")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        
+        return false;
+    };
+    
+    /** A mix of valid and invalid names, similar to what we see in production. */
+    private static final String[] NAMES = {
+        "valid", "valid2", "a b", null, "", " ", "\r\n\t", "\tpadded\n", "someone.with.a.long.name@example.com", "x",
+    };
+
+    private User[] users;
+    private RuleSet<User> ruleSet;
+
+    @Setup
+    public void setUp() {
+        users = new User[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            users[i] = new User();
+            users[i].setName(NAMES[i]);
+        }
+        ruleSet = ValidOrderRules.create();
+    }
+
+    @Benchmark
+    public void nestedIfs(Blackhole blackhole) {
+        for (var user : users) {
+            blackhole.consume(NESTED_IFS.test(user));
+        }
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) {
+        for (var user : users) {
+            blackhole.consume(GoodCode.isValidName(user.getName()));
+        }
+    }
+
+    @Benchmark
+    public void ruleSet(Blackhole blackhole) {
+        for (var user : users) {
+            blackhole.consume(ruleSet.test(user));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package de.pdark.tutorial.cut;
+
+import java.io.Flushable;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.UserBatch;
+
+/**
+ * Like SaveOrder but collects the orders and sends them to the database in batches,
+ * using a single prepared statement.
+ * 
+ * Orders are sent when the batch is full, when flush() is called and on close(). Don't
+ * forget to close this, or the last orders will be lost. After a rollback, the orders which
+ * weren't sent yet are dropped, too; TransactionalSaveOrder sends them again.
+ */
+public class BatchSaveOrder implements Consumer<Order>, Flushable, AutoCloseable, TransactionAware {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    
+    private static final String SQL = "insert into orders(user_name) values (?)";
+
+    private Connection connection;
+    private int batchSize;
+    private PreparedStatement stmt;
+    /** The Order or, for rows from a UserBatch, the user name. Only needed for error messages. */
+    private List<Object> pending = new ArrayList<>();
+    private Timer insertTimer = Timer.NOOP;
+    private Counter stored = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
+
+    public BatchSaveOrder(Connection connection) {
+        this(connection, DEFAULT_BATCH_SIZE);
+    }
+    
+    public BatchSaveOrder(Connection connection, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive but was " + batchSize);
+        }
+        
+        this.connection = connection;
+        this.batchSize = batchSize;
+    }
+
+    public BatchSaveOrder metrics(MetricsRegistry metrics) {
+        insertTimer = metrics.timer(MetricNames.SQL_INSERT);
+        stored = metrics.counter(MetricNames.ORDERS_STORED);
+        errors = metrics.counter(MetricNames.STORE_ERRORS);
+        return this;
+    }
+
+    public void accept(Order order) {
+        try {
+            addBatch(order.getUser().getName()); // Note: In real code, this would be an ID
+        } catch (SQLException e) {
+            errors.increment();
+            throw new IllegalStateException("Unable to store order in database\nsql: " + SQL + "\n order: " + order, e);
+        }
+        
+        pending.add(order);
+        if (pending.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /** Store an order for each selected row of batch without creating User or Order objects. */
+    public void accept(UserBatch batch, BitSet selection) {
+        for (int row = selection.nextSetBit(0); row >= 0 && row < batch.size(); row = selection.nextSetBit(row + 1)) {
+            var name = batch.name(row);
+            try {
+                addBatch(name);
+            } catch (SQLException e) {
+                errors.increment();
+                throw new IllegalStateException("Unable to store order in database\nsql: " + SQL + "\n user_name: " + name, e);
+            }
+            
+            pending.add(name);
+            if (pending.size() >= batchSize) {
+                flush();
+            }
+        }
+    }
+
+    private void addBatch(String userName) throws SQLException {
+        if (stmt == null) {
+            stmt = connection.prepareStatement(SQL);
+        }
+        
+        stmt.setString(1, userName);
+        stmt.addBatch();
+    }
+
+    @Override
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        // Forget the orders, even when the batch fails. Otherwise, we would send them again with the next batch.
+        var orders = pending;
+        pending = new ArrayList<>();
+        
+        int[] counts;
+        var start = insertTimer.start();
+        try {
+            counts = stmt.executeBatch();
+        } catch (BatchUpdateException e) {
+            clearBatch(e);
+            throw failed(orders, failedOrders(orders, e.getUpdateCounts()), e);
+        } catch (SQLException e) {
+            clearBatch(e);
+            throw failed(orders, failedOrders(orders, new int[0]), e);
+        } finally {
+            insertTimer.stop(start);
+        }
+        
+        var failed = failedOrders(orders, counts);
+        if (!failed.isEmpty()) {
+            throw failed(orders, failed, new SQLException("INSERT failed, update counts: " + Arrays.toString(counts)));
+        }
+        stored.add(orders.size());
+    }
+
+    @Override
+    public void committed() {
+        // Nothing to do, flush() was called before the commit
+    }
+
+    @Override
+    public void rolledBack() {
+        pending.clear();
+        if (stmt == null) {
+            return;
+        }
+        
+        try {
+            stmt.clearBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to clear batch: " + SQL, e);
+        }
+    }
+
+    private void clearBatch(SQLException error) {
+        try {
+            stmt.clearBatch();
+        } catch (SQLException e) {
+            error.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Every INSERT must create exactly one row. Drivers which stop at the first error return fewer counts
+     * than statements; all orders after the last count weren't stored either.
+     */
+    private List<Integer> failedOrders(List<Object> orders, int[] counts) {
+        var result = new ArrayList<Integer>();
+        for (int i = 0; i < orders.size(); i++) {
+            if (i >= counts.length || (counts[i] != 1 && counts[i] != Statement.SUCCESS_NO_INFO)) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
+
+    private IllegalStateException failed(List<Object> batch, List<Integer> failed, SQLException e) {
+        errors.add(failed.size());
+        stored.add(batch.size() - failed.size());
+        var failedOrders = failed.stream()
+                .map(it -> "\n order #" + it + ": " + batch.get(it))
+                .collect(Collectors.joining());
+        return new IllegalStateException("Unable to store " + failed.size() + " of " + batch.size()
+            + " orders in database\nsql: " + SQL + failedOrders, e); // Again put as much information into an error message as possible
+    }
+
+    /** Sends the remaining orders and releases the prepared statement. */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closeStatement();
+        }
+    }
+
+    private void closeStatement() {
+        if (stmt == null) {
+            return;
+        }
+        
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to close statement: " + SQL, e);
+        } finally {
+            stmt = null;
+        }
+    }
+}
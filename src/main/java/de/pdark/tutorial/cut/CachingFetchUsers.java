@@ -0,0 +1,100 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Like FetchUsers but only returns users which are new or have changed since the last run.
+ * Unchanged users were already validated and their orders stored, so they are skipped. The
+ * users table needs a unique id (see KeysetFetchUsers.DEFAULT_ID_COLUMN) and a change marker
+ * column, for example a version or an updated-at timestamp.
+ * 
+ * This class doesn't validate anything. The users which it returns go through the validator of
+ * GoodCode like all others.
+ * 
+ * The cache only learns the new users when commit() is called. Call it after the run was
+ * successful, so users of a failed run are processed again:
+ * 
+ *     var fetch = new CachingFetchUsers(connection, "version", cache);
+ *     new GoodCode(fetch, store).doSomethingUseful();
+ *     fetch.commit();
+ * 
+ * When the cache evicts a user, it's processed again, so the store should ignore duplicates
+ * or the cache should be big enough for the whole table.
+ */
+public class CachingFetchUsers implements Supplier<List<User>> {
+
+    private static class Result {
+        private final Object id;
+        private final Object marker;
+        
+        Result(Object id, Object marker) {
+            this.id = id;
+            this.marker = marker;
+        }
+    }
+
+    private Connection connection;
+    private String idColumn;
+    private String markerColumn;
+    private ValidationCache cache;
+    private List<Result> uncommitted = new ArrayList<>();
+
+    public CachingFetchUsers(Connection connection, String markerColumn, ValidationCache cache) {
+        this(connection, KeysetFetchUsers.DEFAULT_ID_COLUMN, markerColumn, cache);
+    }
+
+    /** @param idColumn A unique number, for example the primary key. Names can repeat, so they can't be the key. */
+    public CachingFetchUsers(Connection connection, String idColumn, String markerColumn, ValidationCache cache) {
+        this.connection = connection;
+        this.idColumn = idColumn;
+        this.markerColumn = markerColumn;
+        this.cache = cache;
+    }
+
+    @Override
+    public List<User> get() {
+        uncommitted.clear(); // commit() and rollback() only apply to the last get()
+        
+        var users = new ArrayList<User>();
+        var sql = "select " + UserMapper.INSTANCE.selectList() + ", " + idColumn + ", " + markerColumn + " from users";
+        try (var stmt = connection.prepareStatement(sql);
+            var ps = stmt.executeQuery()
+        ) {
+            var indices = UserMapper.INSTANCE.resolve(ps.getMetaData());
+            var idIndex = ps.findColumn(idColumn);
+            var markerIndex = ps.findColumn(markerColumn);
+            while (ps.next()) {
+                var id = ps.getObject(idIndex);
+                var marker = ps.getObject(markerIndex);
+                if (cache.contains(id, marker)) {
+                    continue;
+                }
+                
+                uncommitted.add(new Result(id, marker));
+                users.add(UserMapper.INSTANCE.map(ps, indices));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to query database: " + sql, e);
+        }
+        return users;
+    }
+
+    /** Remember the users of the last get() so the next run can skip them. */
+    public void commit() {
+        for (var it : uncommitted) {
+            cache.put(it.id, it.marker);
+        }
+        uncommitted.clear();
+    }
+
+    /** Forget the users of the last get(). They will be processed again. */
+    public void rollback() {
+        uncommitted.clear();
+    }
+}
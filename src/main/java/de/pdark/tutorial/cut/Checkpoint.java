@@ -0,0 +1,21 @@
+package de.pdark.tutorial.cut;
+
+/** Remembers how far a run got, so the next run can continue there. */
+public interface Checkpoint {
+    /** The key which was saved last or null when the next run has to start from the beginning. */
+    String load();
+    
+    /**
+     * Called after everything up to and including key has been committed. Or, when the checkpoint
+     * is transactional, right before the commit.
+     */
+    void save(String key);
+    
+    /** Called when a run completes. The next run starts from the beginning. */
+    void clear();
+    
+    /** true when save() writes in the same transaction as the orders. */
+    default boolean isTransactional() {
+        return false;
+    }
+}
@@ -0,0 +1,169 @@
+package de.pdark.tutorial.cut;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+
+/**
+ * Makes a store idempotent: orders for users which already have one are dropped. The existing
+ * user names are loaded with a single query before the first order, after that there are
+ * no extra round trips. Duplicates within the same run are dropped as well.
+ * 
+ * Wrap SaveOrder, BatchSaveOrder or any other store. flush() and close() are passed on.
+ * 
+ * A name only counts as stored when the database has it for sure: after a successful flush() in
+ * auto-commit mode or, inside TransactionalSaveOrder, after the commit. Until then, it's pending.
+ * Pending names are forgotten on rollback, so the orders can be sent again. When flush() or the
+ * store fails, we don't know which orders made it, so the names are loaded again from the database.
+ * 
+ * This only protects against runs which happen one after the other. If several processes
+ * write orders at the same time, you still need a unique constraint in the database.
+ */
+public class DedupSaveOrder implements Consumer<Order>, Flushable, AutoCloseable, TransactionAware {
+
+    private static final String SQL = "select distinct user_name from orders";
+
+    private Connection connection;
+    private Consumer<Order> store;
+    private Set<String> stored;
+    /** Passed to store but not committed yet */
+    private Set<String> pending = new HashSet<>();
+    private Counter duplicates = Counter.NOOP;
+
+    public DedupSaveOrder(Connection connection, Consumer<Order> store) {
+        this.connection = connection;
+        this.store = store;
+    }
+
+    public DedupSaveOrder metrics(MetricsRegistry metrics) {
+        duplicates = metrics.counter(MetricNames.ORDERS_DUPLICATE);
+        return this;
+    }
+
+    @Override
+    public void accept(Order order) {
+        if (stored == null) {
+            stored = load();
+        }
+        
+        var name = order.getUser().getName();
+        if (stored.contains(name) || !pending.add(name)) {
+            duplicates.increment();
+            return;
+        }
+        
+        try {
+            store.accept(order);
+        } catch (RuntimeException e) {
+            forget(); // A batching store may have failed to send earlier orders as well
+            throw e;
+        }
+    }
+
+    private Set<String> load() {
+        var result = new HashSet<String>();
+        try (var stmt = connection.prepareStatement(SQL);
+            var ps = stmt.executeQuery()
+        ) {
+            while (ps.next()) {
+                result.add(ps.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to load existing orders: " + SQL, e);
+        }
+        return result;
+    }
+
+    @Override
+    public void flush() {
+        try {
+            flushStore();
+        } catch (RuntimeException e) {
+            forget();
+            throw e;
+        }
+        
+        if (isAutoCommit()) {
+            promote();
+        }
+    }
+
+    private void flushStore() {
+        if (store instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to flush " + store, e);
+            }
+        }
+    }
+
+    private boolean isAutoCommit() {
+        try {
+            return connection.getAutoCommit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to read auto-commit of " + connection, e);
+        }
+    }
+
+    private void promote() {
+        if (stored != null) {
+            stored.addAll(pending);
+        }
+        pending.clear();
+    }
+
+    /** Some of the pending orders may be in the database, some may not. Ask the database again. */
+    private void forget() {
+        pending.clear();
+        stored = null;
+    }
+
+    @Override
+    public void committed() {
+        if (store instanceof TransactionAware aware) {
+            aware.committed();
+        }
+        promote();
+    }
+
+    @Override
+    public void rolledBack() {
+        pending.clear();
+        if (store instanceof TransactionAware aware) {
+            aware.rolledBack();
+        }
+    }
+
+    /** Sends the pending orders and closes the store. */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            closeStore();
+        }
+    }
+
+    private void closeStore() {
+        if (store instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to close " + store, e);
+            }
+        }
+    }
+}
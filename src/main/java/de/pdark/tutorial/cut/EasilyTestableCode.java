@@ -1,12 +1,10 @@
 package de.pdark.tutorial.cut;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
+import de.pdark.tutorial.cut.database.Database;
 import de.pdark.tutorial.cut.model.Order;
 import de.pdark.tutorial.cut.model.User;
 
@@ -15,21 +13,16 @@ public class EasilyTestableCode {
     // No database connection anymore
     private Supplier<List<User>> fetch;
     private Consumer<Order> store;
+    private Runnable afterRun = () -> {};
 
     /** Replace constructor with this in existing code. */
     public static EasilyTestableCode create() {
-        var connection = connectToDatabase();
-        var fetch = new FetchUsers(connection);
-        var store = new SaveOrder(connection);
-        return new EasilyTestableCode(fetch, store);
-    }
-
-    private static Connection connectToDatabase() {
-        try {
-            return DriverManager.getConnection("jdbc:....", "...", "..."); // Bad: Hardcoded URL and credentials 
-        } catch (SQLException e) {
-            throw new IllegalStateException("Unable to connect to database", e); // Note: Always use exception chaining
-        } 
+        var dataSource = Database.pool();
+        var fetch = new FetchUsers(dataSource);
+        var store = new LeasedSaveOrder(dataSource);
+        var result = new EasilyTestableCode(fetch, store);
+        result.afterRun = store::close; // One connection for all orders of a run, returned when the run is over
+        return result;
     }
     
     public EasilyTestableCode(Supplier<List<User>> fetch, Consumer<Order> store) {
@@ -39,7 +32,11 @@ public class EasilyTestableCode {
 
     public void doSomethingUseful() {
         List<User> users = fetch.get();
-        process(users);
+        try {
+            process(users);
+        } finally {
+            afterRun.run();
+        }
     }
 
     private void process(List<User> users) {
@@ -0,0 +1,132 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.UserBatch;
+
+/**
+ * Like StreamUsers but the names go straight from the ResultSet into a UserBatch. No User
+ * objects are created.
+ * 
+ * The stream returns the same batch again and again, refilled with the next rows. Process
+ * each batch before asking for the next one and don't keep references to it. Always close
+ * the stream, it holds an open cursor.
+ */
+public class FetchUserBatches implements Supplier<Stream<UserBatch>> {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private Connection connection;
+    private int batchSize;
+    private Timer queryTimer = Timer.NOOP;
+    private Counter fetched = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
+
+    public FetchUserBatches(Connection connection) {
+        this(connection, DEFAULT_BATCH_SIZE);
+    }
+
+    public FetchUserBatches(Connection connection, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive but was " + batchSize);
+        }
+        
+        this.connection = connection;
+        this.batchSize = batchSize;
+    }
+
+    public FetchUserBatches metrics(MetricsRegistry metrics) {
+        queryTimer = metrics.timer(MetricNames.SQL_QUERY);
+        fetched = metrics.counter(MetricNames.USERS_FETCHED);
+        errors = metrics.counter(MetricNames.FETCH_ERRORS);
+        return this;
+    }
+
+    public Stream<UserBatch> get() {
+        var sql = "select " + UserMapper.INSTANCE.selectList() + " from users";
+        PreparedStatement stmt = null;
+        try {
+            stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(batchSize);
+            var start = queryTimer.start();
+            var cursor = new Cursor(sql, stmt, stmt.executeQuery());
+            queryTimer.stop(start);
+            
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException e) {
+            errors.increment();
+            var error = new IllegalStateException("Unable to query database: " + sql, e);
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException e2) {
+                    error.addSuppressed(e2);
+                }
+            }
+            throw error;
+        }
+    }
+
+    private class Cursor extends Spliterators.AbstractSpliterator<UserBatch> {
+        private String sql;
+        private PreparedStatement stmt;
+        private ResultSet ps;
+        private int column;
+        private UserBatch batch = new UserBatch(batchSize);
+
+        public Cursor(String sql, PreparedStatement stmt, ResultSet ps) throws SQLException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.sql = sql;
+            this.stmt = stmt;
+            this.ps = ps;
+            this.column = UserMapper.INSTANCE.resolve(ps.getMetaData())[0];
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super UserBatch> action) {
+            batch.clear();
+            try {
+                while (!batch.isFull() && ps.next()) {
+                    batch.add(ps.getString(column));
+                }
+            } catch (SQLException e) {
+                errors.increment();
+                throw new IllegalStateException("Unable to read next row from database: " + sql, e);
+            }
+            
+            if (batch.size() == 0) {
+                close(); // Release the cursor as soon as possible, even when the caller forgets to close the stream
+                return false;
+            }
+            
+            fetched.add(batch.size());
+            action.accept(batch);
+            return true;
+        }
+
+        public void close() {
+            try {
+                try {
+                    ps.close();
+                } finally {
+                    stmt.close(); // Even when closing the result set failed
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Unable to close cursor: " + sql, e);
+            }
+        }
+    }
+}
@@ -6,27 +6,84 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
 
+import javax.sql.DataSource;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.NamePool;
 import de.pdark.tutorial.cut.model.User;
 
 public class FetchUsers implements Supplier<List<User>> {
 
     private Connection connection;
+    private DataSource dataSource;
+    private UserMapper mapper = UserMapper.INSTANCE;
+    private Timer fetchTimer = Timer.NOOP;
+    private Timer queryTimer = Timer.NOOP;
+    private Counter fetched = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
 
     public FetchUsers(Connection connection) {
         this.connection = connection;
     }
 
+    /** Borrow a connection for each call of get(). */
+    public FetchUsers(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public FetchUsers metrics(MetricsRegistry metrics) {
+        fetchTimer = metrics.timer(MetricNames.FETCH);
+        queryTimer = metrics.timer(MetricNames.SQL_QUERY);
+        fetched = metrics.counter(MetricNames.USERS_FETCHED);
+        errors = metrics.counter(MetricNames.FETCH_ERRORS);
+        return this;
+    }
+
+    /** Share repeated names between the users. Pays off when many users have the same name. */
+    public FetchUsers namePool(NamePool pool) {
+        mapper = new UserMapper(pool);
+        return this;
+    }
+
     public List<User> get() {
+        var start = fetchTimer.start();
+        try {
+            var users = borrowAndFetch();
+            fetched.add(users.size());
+            return users;
+        } catch (RuntimeException e) {
+            errors.increment();
+            throw e;
+        } finally {
+            fetchTimer.stop(start);
+        }
+    }
+
+    private List<User> borrowAndFetch() {
+        if (dataSource == null) {
+            return fetch(connection);
+        }
+        
+        try (var connection = dataSource.getConnection()) {
+            return fetch(connection);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to borrow connection from " + dataSource, e);
+        }
+    }
+
+    private List<User> fetch(Connection connection) {
         var users = new ArrayList<User>();
-        var sql = "select * from users";
+        var sql = "select " + mapper.selectList() + " from users";
         try (var stmt = connection.prepareStatement(sql)) {
+            var start = queryTimer.start();
             try (var ps = stmt.executeQuery()) {
+                queryTimer.stop(start);
+                var indices = mapper.resolve(ps.getMetaData());
                 while (ps.next()) {
-                    var user = new User();
-                    user.setName(ps.getString("name"));
-                    // copy all the other fields...
-                    
-                    users.add(user);
+                    users.add(mapper.map(ps, indices));
                 }
             }
         } catch (SQLException e) {
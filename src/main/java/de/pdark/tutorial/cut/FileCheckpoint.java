@@ -0,0 +1,59 @@
+package de.pdark.tutorial.cut;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Keeps the key in a small text file. The file is replaced atomically, so a crash while saving
+ * leaves either the old or the new key but never half of it.
+ */
+public class FileCheckpoint implements Checkpoint {
+
+    private Path file;
+
+    public FileCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String load() {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read checkpoint " + file.toAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public void save(String key) {
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.writeString(tmp, key, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to save checkpoint " + file.toAbsolutePath() + "\nkey: " + key, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete checkpoint " + file.toAbsolutePath(), e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "FileCheckpoint(" + file + ")";
+    }
+}
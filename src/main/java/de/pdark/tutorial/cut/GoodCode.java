@@ -1,35 +1,74 @@
 package de.pdark.tutorial.cut;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.util.BitSet;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import de.pdark.tutorial.cut.database.Database;
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
 import de.pdark.tutorial.cut.model.Order;
 import de.pdark.tutorial.cut.model.User;
+import de.pdark.tutorial.cut.model.UserBatch;
 
 public class GoodCode {
-    /** Can be simplified further now that we have lots of tests as time permits. */
-    public static final Predicate<User> VALID_ORDER = user -> {
-        if (user.getName() != null) {
-            if (user.getName().length() > 0) {
-                if (user.getName().trim().length() > 0) {
-                    if (!user.getName().contains(" ")) {
-                        return true;
-                    }
-                }
-            }
+    /**
+     * Same rules as the nested ifs in EasilyTestableCode but in a single pass over the name,
+     * without calling trim() and contains(). GoodCodeTest.ValidUserTest made this refactoring safe.
+     * For named rules with statistics, see ValidOrderRules.
+     */
+    public static final Predicate<User> VALID_ORDER = user -> isValidName(user.getName());
+    
+    /**
+     * VALID_ORDER as SQL condition for the column name, see ServerSideGoodCode. The regexp
+     * matches a character which trim() would keep. ServerSideGoodCodeTest makes sure both agree.
+     */
+    public static final String VALID_ORDER_SQL = "name is not null and name not like '% %' and regexp_like(name, '[^\\x00-\\x20]')";
+    
+    /** A name must contain at least one character which trim() would keep and no space. */
+    public static boolean isValidName(String name) {
+        if (name == null) {
+            return false;
         }
         
-        return false;
-    };
+        var visible = false;
+        for (int i = 0, length = name.length(); i < length; i++) {
+            var c = name.charAt(i);
+            if (c == ' ') {
+                return false;
+            }
+            if (c > ' ') { // trim() removes all characters <= ' '
+                visible = true;
+            }
+        }
+        return visible;
+    }
+    
+    /**
+     * isValidName() for a whole batch. Sets the bit of every valid row in selection and clears all
+     * others.
+     */
+    public static void validate(UserBatch batch, BitSet selection) {
+        selection.clear();
+        for (int row = 0, size = batch.size(); row < size; row++) {
+            if (isValidName(batch.name(row))) {
+                selection.set(row);
+            }
+        }
+    }
     
     // No database connection anymore
-    private Supplier<List<User>> fetch;
+    private Supplier<Stream<User>> fetch;
     private Consumer<Order> store;
+    private Predicate<User> validator = VALID_ORDER;
+    private Timer validateTimer = Timer.NOOP;
+    private Counter accepted = Counter.NOOP;
+    private Counter rejected = Counter.NOOP;
 
     /**
      * Replace old constructor with this in existing code - minimal change, compiler will
@@ -38,45 +77,87 @@ public class GoodCode {
      * Later, if we want to, we can clean this up further.
      */
     public static GoodCode create() {
-        var connection = connectToDatabase();
-        var fetch = new FetchUsers(connection);
-        var store = new SaveOrder(connection);
-        return new GoodCode(fetch, store);
+        var dataSource = Database.pool();
+        var fetch = new FetchUsers(dataSource);
+        var store = new LeasedSaveOrder(dataSource);
+        // One connection for all orders of a run, returned when the run is over
+        return streaming(() -> fetch.get().stream().onClose(store::close), store);
     }
 
-    private static Connection connectToDatabase() {
-        try {
-            return DriverManager.getConnection("jdbc:....", "...", "..."); // Bad: Hardcoded URL and credentials 
-        } catch (SQLException e) {
-            throw new IllegalStateException("Unable to connect to database", e); // Note: Always use exception chaining
-        } 
+    /** Same as create() but the users are processed while the database is still sending them. */
+    public static GoodCode createStreaming() {
+        var dataSource = Database.pool();
+        var fetch = new StreamUsers(dataSource);
+        var store = new LeasedSaveOrder(dataSource);
+        return streaming(() -> fetch.get().onClose(store::close), store);
     }
     
     /** New constructor to make testing trivial. */
     public GoodCode(Supplier<List<User>> fetch, Consumer<Order> store) {
-        this.fetch = fetch;
+        this(store);
+        this.fetch = () -> fetch.get().stream();
+    }
+
+    private GoodCode(Consumer<Order> store) {
         this.store = store;
     }
 
+    /**
+     * Memory stays flat no matter how big the table is since we never hold the full list of users.
+     * The stream is closed after processing, even when store throws an exception.
+     * 
+     * Note: We can't use a second constructor here since Supplier<List<User>> and
+     * Supplier<Stream<User>> have the same erasure.
+     */
+    public static GoodCode streaming(Supplier<Stream<User>> fetch, Consumer<Order> store) {
+        var result = new GoodCode(store);
+        result.fetch = fetch;
+        return result;
+    }
+
+    /** Pass the same registry to fetch and store to get the numbers for the whole chain. */
+    public GoodCode metrics(MetricsRegistry metrics) {
+        validateTimer = metrics.timer(MetricNames.VALIDATE);
+        accepted = metrics.counter(MetricNames.USERS_ACCEPTED);
+        rejected = metrics.counter(MetricNames.USERS_REJECTED);
+        return this;
+    }
+
+    /**
+     * Replaces VALID_ORDER, for example with a MemoizingValidator when names repeat a lot or with
+     * ValidOrderRules.create() for statistics per rule.
+     */
+    public GoodCode validator(Predicate<User> validator) {
+        this.validator = validator;
+        return this;
+    }
+
     public void doSomethingUseful() {
-        List<User> users = fetch.get();
-        process(users);
+        try (var users = fetch.get()) {
+            users.forEach(this::process);
+        }
     }
 
-    private void process(List<User> users) { // TODO Could be merged into doSomethingUseful()
-        for(var user: users) {
-            if (VALID_ORDER.test(user)) {
-                var order = new Order();
-                order.setUser(user);
-                
-                store.accept(order);
-            }
+    private void process(User user) {
+        var start = validateTimer.start();
+        var valid = validator.test(user);
+        validateTimer.stop(start);
+        
+        if (!valid) {
+            rejected.increment();
+            return;
         }
+        
+        accepted.increment();
+        var order = new Order();
+        order.setUser(user);
+        
+        store.accept(order);
     }
 
     /*
-     * With GoodCodeTest, we can now try to find a better solution for connectToDatabase() and
-     * other problems - if we want to. The main concern - testing the business logic - is already
+     * With GoodCodeTest, we can now try to find a better solution for connecting to the database
+     * (see Database.pool()) and other problems - if we want to. The main concern - testing the business logic - is already
      * covered, so we have achieved the main goal.
      * 
      * But we have one concern left: An integration test would tell us that fetching and storing
@@ -0,0 +1,115 @@
+package de.pdark.tutorial.cut;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Runs GoodCode chunk by chunk. After each chunk, the orders are committed and the key of the
+ * last user is saved in the checkpoint. When a run fails, the next run continues after the last
+ * committed chunk instead of starting from scratch.
+ * 
+ * A transactional checkpoint (see TableCheckpoint) is saved before the commit, so the orders
+ * and the key are committed together. Other checkpoints are saved after the commit. When the
+ * process dies between the two, the next run processes the last chunk again.
+ * 
+ * Only one chunk of users is in memory at any time.
+ */
+public class IncrementalGoodCode {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    /** Returns the chunk after the key or an empty list at the end. */
+    public interface Fetch extends Function<String, List<User>> {
+        /** The key of the last user which apply() returned */
+        String lastKey();
+    }
+
+    private Fetch fetch;
+    private Consumer<Order> store;
+    private Runnable commit;
+    private Checkpoint checkpoint;
+    private MetricsRegistry metrics = MetricsRegistry.NOOP;
+
+    /**
+     * Everything happens in a single transaction per chunk on connection, including the
+     * checkpoint. If the run fails, the caller has to roll back the last chunk.
+     */
+    public static IncrementalGoodCode create(Connection connection) {
+        return create(connection, new TableCheckpoint(connection, IncrementalGoodCode.class.getSimpleName()));
+    }
+
+    public static IncrementalGoodCode create(Connection connection, Checkpoint checkpoint) {
+        var fetch = new KeysetFetchUsers(connection, DEFAULT_CHUNK_SIZE);
+        var store = new BatchSaveOrder(connection);
+        return new IncrementalGoodCode(fetch, store, () -> commit(connection), checkpoint);
+    }
+
+    private static void commit(Connection connection) {
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to commit " + connection, e);
+        }
+    }
+
+    /**
+     * fetch gets the key from the checkpoint and returns the next chunk or an empty list at the end.
+     * If store is Flushable, it's flushed before each commit.
+     */
+    public IncrementalGoodCode(Fetch fetch, Consumer<Order> store, Runnable commit, Checkpoint checkpoint) {
+        this.fetch = fetch;
+        this.store = store;
+        this.commit = commit;
+        this.checkpoint = checkpoint;
+    }
+
+    public IncrementalGoodCode metrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public void doSomethingUseful() {
+        var key = checkpoint.load();
+        while (true) {
+            var users = fetch.apply(key);
+            if (users.isEmpty()) {
+                break;
+            }
+            
+            new GoodCode(() -> users, store).metrics(metrics).doSomethingUseful();
+            flush();
+            
+            key = fetch.lastKey();
+            if (checkpoint.isTransactional()) {
+                checkpoint.save(key);
+                commit.run();
+            } else {
+                commit.run();
+                checkpoint.save(key);
+            }
+        }
+        
+        checkpoint.clear();
+        commit.run();
+    }
+
+    private void flush() {
+        if (store instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to flush " + store, e);
+            }
+        }
+    }
+}
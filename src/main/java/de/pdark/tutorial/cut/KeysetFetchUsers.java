@@ -0,0 +1,105 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Reads the users in chunks, ordered by name. The argument is lastKey() of the previous chunk
+ * (null for the first chunk), so every chunk is a cheap index range scan, no matter how far
+ * into the table we are. An empty list means there are no more users.
+ * 
+ * Names repeat, so the key is the name plus a unique number (idColumn). Otherwise, users with
+ * the same name as the last one of a chunk would be skipped. Users without a name are never read
+ * since they can't be valid (see GoodCode.isValidName()).
+ */
+public class KeysetFetchUsers implements IncrementalGoodCode.Fetch {
+
+    /** The row id of H2. Use the primary key in other databases. */
+    public static final String DEFAULT_ID_COLUMN = "_rowid_";
+
+    private Connection connection;
+    private int chunkSize;
+    private String firstSql;
+    private String nextSql;
+    private String lastKey;
+    private Timer queryTimer = Timer.NOOP;
+    private Counter fetched = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
+
+    public KeysetFetchUsers(Connection connection, int chunkSize) {
+        this(connection, chunkSize, DEFAULT_ID_COLUMN);
+    }
+
+    /** @param idColumn A unique number, for example the primary key */
+    public KeysetFetchUsers(Connection connection, int chunkSize, String idColumn) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive but was " + chunkSize);
+        }
+        
+        this.connection = connection;
+        this.chunkSize = chunkSize;
+        var select = "select " + UserMapper.INSTANCE.selectList() + ", " + idColumn + " from users where ";
+        var orderBy = " order by name, " + idColumn + " limit ?";
+        this.firstSql = select + "name is not null" + orderBy;
+        this.nextSql = select + "(name, " + idColumn + ") > (?, ?)" + orderBy;
+    }
+
+    public KeysetFetchUsers metrics(MetricsRegistry metrics) {
+        queryTimer = metrics.timer(MetricNames.SQL_QUERY);
+        fetched = metrics.counter(MetricNames.USERS_FETCHED);
+        errors = metrics.counter(MetricNames.FETCH_ERRORS);
+        return this;
+    }
+
+    @Override
+    public List<User> apply(String afterKey) {
+        var sql = afterKey == null ? firstSql : nextSql;
+        var users = new ArrayList<User>(chunkSize);
+        try (var stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (afterKey != null) {
+                var separator = afterKey.indexOf(':');
+                stmt.setString(index ++, afterKey.substring(separator + 1));
+                stmt.setLong(index ++, Long.parseLong(afterKey.substring(0, separator)));
+            }
+            stmt.setInt(index, chunkSize);
+            
+            var start = queryTimer.start();
+            try (var ps = stmt.executeQuery()) {
+                queryTimer.stop(start);
+                var indices = UserMapper.INSTANCE.resolve(ps.getMetaData());
+                var idIndex = ps.getMetaData().getColumnCount();
+                long lastId = 0;
+                while (ps.next()) {
+                    users.add(UserMapper.INSTANCE.map(ps, indices));
+                    lastId = ps.getLong(idIndex);
+                }
+                
+                if (!users.isEmpty()) {
+                    lastKey = lastId + ":" + users.get(users.size() - 1).getName();
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            errors.increment();
+            throw new IllegalStateException("Unable to query database: " + sql + "\nafter: " + afterKey, e);
+        }
+        
+        fetched.add(users.size());
+        return users;
+    }
+
+    /** The id and the name of the last user which apply() returned, as "id:name". */
+    @Override
+    public String lastKey() {
+        return lastKey;
+    }
+}
@@ -0,0 +1,59 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import de.pdark.tutorial.cut.model.Order;
+
+/**
+ * SaveOrder(DataSource) borrows a connection from the pool for every order. That means a
+ * validation round trip, a stack trace for the leak detection and a rollback per order.
+ * 
+ * This borrows one connection at the first order, stores all orders of the run with
+ * SaveOrder(Connection) and returns the connection on close(). The next order borrows a new one,
+ * so the same instance can be used for many runs. See GoodCode.create().
+ */
+public class LeasedSaveOrder implements Consumer<Order>, AutoCloseable {
+
+    private DataSource dataSource;
+    private Connection connection;
+    private SaveOrder store;
+
+    public LeasedSaveOrder(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public synchronized void accept(Order order) {
+        if (connection == null) {
+            try {
+                connection = dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Unable to borrow connection from " + dataSource + "\n order: " + order, e);
+            }
+            store = new SaveOrder(connection);
+        }
+        
+        store.accept(order);
+    }
+
+    /** Returns the connection to the pool. Does nothing when no order was stored since the last call. */
+    @Override
+    public synchronized void close() {
+        if (connection == null) {
+            return;
+        }
+        
+        var connection = this.connection;
+        this.connection = null;
+        store = null;
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to return connection to " + dataSource, e);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package de.pdark.tutorial.cut;
+
+import java.util.function.Predicate;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Remembers the result of a validation per name, for tables where the same names come up over
+ * and over. Repeated names skip the rules completely. Use it with GoodCode.validator(). The rules
+ * must only look at the name, otherwise the cached result is wrong for the next user.
+ * 
+ * The cache is a fixed-size open-addressing table keyed by String.hashCode(), which the String
+ * already caches. There is one array for valid names and one for invalid names, so a hit needs
+ * no allocation at all and a miss only stores the reference to the name. A name is looked up
+ * in PROBES slots after its home slot. When they are all taken, the home slot is overwritten.
+ * 
+ * Thread-safe without locks: Slots are written without synchronization. Since String is
+ * immutable, another thread sees either the old name, the new name or nothing. In the worst
+ * case, it validates a name once more.
+ */
+public class MemoizingValidator implements Predicate<User> {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /** How many slots after the home slot are checked */
+    public static final int PROBES = 3;
+
+    private final Predicate<User> rules;
+    private final String[] valid;
+    private final String[] invalid;
+    private final int mask;
+    private Counter hits = Counter.NOOP;
+    private Counter misses = Counter.NOOP;
+    private Counter evictions = Counter.NOOP;
+
+    public MemoizingValidator(Predicate<User> rules) {
+        this(rules, DEFAULT_CAPACITY);
+    }
+
+    /** capacity is rounded up to the next power of two */
+    public MemoizingValidator(Predicate<User> rules, int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30 but was " + capacity);
+        }
+        
+        var size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        
+        this.rules = rules;
+        this.valid = new String[size];
+        this.invalid = new String[size];
+        this.mask = size - 1;
+    }
+
+    public MemoizingValidator metrics(MetricsRegistry metrics) {
+        hits = metrics.counter(MetricNames.MEMO_HITS);
+        misses = metrics.counter(MetricNames.MEMO_MISSES);
+        evictions = metrics.counter(MetricNames.MEMO_EVICTIONS);
+        return this;
+    }
+
+    @Override
+    public boolean test(User user) {
+        var name = user.getName();
+        if (name == null) {
+            return rules.test(user); // Nothing to use as key
+        }
+        
+        var home = slot(name);
+        if (contains(valid, home, name)) {
+            hits.increment();
+            return true;
+        }
+        if (contains(invalid, home, name)) {
+            hits.increment();
+            return false;
+        }
+        
+        misses.increment();
+        var result = rules.test(user);
+        put(result ? valid : invalid, home, name);
+        return result;
+    }
+
+    /** Drops all names, for example after the rules have changed. */
+    public void clear() {
+        for (int i = 0; i < valid.length; i++) {
+            valid[i] = null;
+            invalid[i] = null;
+        }
+    }
+
+    /** Number of slots in each table */
+    public int capacity() {
+        return valid.length;
+    }
+
+    private int slot(String name) {
+        var h = name.hashCode();
+        return (h ^ (h >>> 16)) & mask; // Same spreading as HashMap
+    }
+
+    private boolean contains(String[] table, int home, String name) {
+        for (int i = 0; i <= PROBES; i++) {
+            var cached = table[(home + i) & mask];
+            if (cached == null) {
+                return false;
+            }
+            if (cached == name || cached.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void put(String[] table, int home, String name) {
+        for (int i = 0; i <= PROBES; i++) {
+            var index = (home + i) & mask;
+            if (table[index] == null) {
+                table[index] = name;
+                return;
+            }
+        }
+        
+        evictions.increment();
+        table[home] = name;
+    }
+}
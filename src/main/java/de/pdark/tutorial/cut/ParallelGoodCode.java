@@ -0,0 +1,140 @@
+package de.pdark.tutorial.cut;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * GoodCode with the validation and the creation of the orders spread over several cores. The list
+ * of users is split with a parallel stream which runs in its own ForkJoinPool, so it doesn't
+ * compete with other users of the common pool.
+ * 
+ * The store is never called by two threads at the same time, so it doesn't need to be thread-safe:
+ * 
+ * - ordered(true) (the default): The orders arrive in the same order as the users, just like with
+ *   GoodCode. The stream has to buffer orders which were created too early.
+ * - ordered(false): The orders arrive in any order, the threads take turns calling the store.
+ * 
+ * This only pays off when validation is expensive compared to storing, see ParallelBenchmark.
+ */
+public class ParallelGoodCode {
+
+    private Supplier<List<User>> fetch;
+    private Consumer<Order> store;
+    private int parallelism;
+    private boolean ordered = true;
+    private Predicate<User> validator = GoodCode.VALID_ORDER;
+    private Timer validateTimer = Timer.NOOP;
+    private Counter accepted = Counter.NOOP;
+    private Counter rejected = Counter.NOOP;
+
+    public ParallelGoodCode(Supplier<List<User>> fetch, Consumer<Order> store, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive but was " + parallelism);
+        }
+        
+        this.fetch = fetch;
+        this.store = store;
+        this.parallelism = parallelism;
+    }
+
+    public ParallelGoodCode ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+
+    /**
+     * Replaces VALID_ORDER, see GoodCode.validator(). The validator is called by several threads
+     * at the same time, so it must be thread-safe like MemoizingValidator.
+     */
+    public ParallelGoodCode validator(Predicate<User> validator) {
+        this.validator = validator;
+        return this;
+    }
+
+    /** Counters and timers are called by several threads, see SimpleMetricsRegistry. */
+    public ParallelGoodCode metrics(MetricsRegistry metrics) {
+        validateTimer = metrics.timer(MetricNames.VALIDATE);
+        accepted = metrics.counter(MetricNames.USERS_ACCEPTED);
+        rejected = metrics.counter(MetricNames.USERS_REJECTED);
+        return this;
+    }
+
+    public void doSomethingUseful() {
+        var users = fetch.get();
+        
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            pool.submit(() -> process(users.parallelStream())).get();
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing " + users.size() + " users", e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * When a worker thread fails, ForkJoinPool wraps the exception in a new one of the same type
+     * to get a stack trace of the waiting thread, sometimes more than once. We want the original.
+     */
+    private RuntimeException unwrap(Throwable error) {
+        while (isCopy(error)) {
+            error = error.getCause();
+        }
+        if (error instanceof RuntimeException result) {
+            return result;
+        }
+        return new IllegalStateException("Processing failed", error);
+    }
+
+    private boolean isCopy(Throwable error) {
+        var cause = error.getCause();
+        return cause != null && cause.getClass() == error.getClass() && cause.toString().equals(error.getMessage());
+    }
+
+    private void process(Stream<User> users) {
+        var orders = users
+                .filter(this::isValid)
+                .map(this::toOrder);
+        
+        if (ordered) {
+            orders.forEachOrdered(store); // One call after the other, in encounter order
+        } else {
+            var lock = new Object();
+            orders.unordered().forEach(order -> {
+                synchronized (lock) {
+                    store.accept(order);
+                }
+            });
+        }
+    }
+
+    private boolean isValid(User user) {
+        var start = validateTimer.start();
+        var valid = validator.test(user);
+        validateTimer.stop(start);
+        
+        (valid ? accepted : rejected).increment();
+        return valid;
+    }
+
+    private Order toOrder(User user) {
+        var order = new Order();
+        order.setUser(user);
+        return order;
+    }
+}
@@ -0,0 +1,156 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Reads the users table with several queries at the same time. Each query reads one range of
+ * names on its own connection from the pool.
+ * 
+ * The ranges come from a first query which splits the sorted names into parallelism buckets of
+ * the same size (ntile). With an index on the key column, each range query only reads its part
+ * of the index. That query costs one extra pass over the index, so the database does about twice
+ * the work of a single query instead of parallelism times like hash partitions would (each hash
+ * partition has to look at every row).
+ * 
+ * The result is the same list which FetchUsers returns. By default, the order of the users is
+ * undefined (just like with "select * from users"). Use ordered(true) to sort them by name.
+ */
+public class PartitionedFetchUsers implements Supplier<List<User>> {
+
+    public static final String DEFAULT_KEY_COLUMN = "name";
+    
+    private static final Comparator<User> BY_NAME = Comparator.comparing(User::getName, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private DataSource dataSource;
+    private int parallelism;
+    private boolean ordered;
+    private String keyColumn = DEFAULT_KEY_COLUMN;
+
+    /** @param parallelism Number of ranges which are read at the same time. Each needs a connection. */
+    public PartitionedFetchUsers(DataSource dataSource, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive but was " + parallelism);
+        }
+        
+        this.dataSource = dataSource;
+        this.parallelism = parallelism;
+    }
+    
+    public PartitionedFetchUsers ordered(boolean ordered) {
+        this.ordered = ordered;
+        return this;
+    }
+    
+    /** The column which is split into ranges. It should have an index. Rows where it is null go to the first range. */
+    public PartitionedFetchUsers keyColumn(String keyColumn) {
+        this.keyColumn = keyColumn;
+        return this;
+    }
+
+    public List<User> get() {
+        var splitPoints = splitPoints();
+        
+        var executor = Executors.newFixedThreadPool(splitPoints.size() + 1);
+        var sql = new ArrayList<String>();
+        try {
+            var partitions = new ArrayList<Future<List<User>>>();
+            for (int i = 0; i <= splitPoints.size(); i++) {
+                var partition = i;
+                var query = "select " + UserMapper.INSTANCE.selectList() + " from users" + where(partition, splitPoints.size());
+                sql.add(query);
+                partitions.add(executor.submit(() -> fetch(query, partition, splitPoints)));
+            }
+            
+            var users = new ArrayList<User>();
+            for (var partition : partitions) {
+                users.addAll(partition.get());
+            }
+            
+            if (ordered) {
+                users.sort(BY_NAME);
+            }
+            return users;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to query database: " + String.join("\n", sql), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for partitions: " + String.join("\n", sql), e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The largest key of each bucket except the last one. Range i contains the keys after split
+     * point i - 1 up to and including split point i. There are fewer than parallelism - 1 split
+     * points when the table is small.
+     */
+    List<String> splitPoints() {
+        var sql = "select max(" + keyColumn + ") from ("
+                + "select " + keyColumn + ", ntile(" + parallelism + ") over (order by " + keyColumn + ") as bucket"
+                + " from users where " + keyColumn + " is not null"
+                + ") group by bucket order by bucket";
+        
+        var result = new ArrayList<String>();
+        try (var connection = dataSource.getConnection();
+            var stmt = connection.prepareStatement(sql);
+            var ps = stmt.executeQuery()
+        ) {
+            while (ps.next()) {
+                result.add(ps.getString(1));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to query database: " + sql, e);
+        }
+        
+        if (!result.isEmpty()) {
+            result.remove(result.size() - 1); // The last range is open, so it also gets rows which were added in the meantime
+        }
+        return result;
+    }
+
+    private String where(int partition, int splitPoints) {
+        var lower = partition > 0 ? keyColumn + " > ?" : null;
+        var upper = partition < splitPoints ? keyColumn + " <= ?" : null;
+        
+        if (lower == null) {
+            return upper == null ? "" : " where " + keyColumn + " is null or " + upper;
+        }
+        return upper == null ? " where " + lower : " where " + lower + " and " + upper;
+    }
+
+    private List<User> fetch(String sql, int partition, List<String> splitPoints) throws SQLException {
+        var users = new ArrayList<User>();
+        try (var connection = dataSource.getConnection();
+            var stmt = connection.prepareStatement(sql)
+        ) {
+            var index = 1;
+            if (partition > 0) {
+                stmt.setString(index++, splitPoints.get(partition - 1));
+            }
+            if (partition < splitPoints.size()) {
+                stmt.setString(index, splitPoints.get(partition));
+            }
+            try (var ps = stmt.executeQuery()) {
+                var indices = UserMapper.INSTANCE.resolve(ps.getMetaData());
+                while (ps.next()) {
+                    users.add(UserMapper.INSTANCE.map(ps, indices));
+                }
+            }
+        } catch (SQLException e) {
+            throw new SQLException("Unable to read range " + partition + " of " + (splitPoints.size() + 1), e);
+        }
+        return users;
+    }
+}
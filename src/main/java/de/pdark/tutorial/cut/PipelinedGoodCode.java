@@ -0,0 +1,226 @@
+package de.pdark.tutorial.cut;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Runs fetch, transform and store of GoodCode at the same time, each in its own thread.
+ * 
+ * The stages are connected by bounded queues. When the store can't keep up, the queues fill up
+ * and the fetch stage has to wait. That way, reading from and writing to the database overlap
+ * but memory use is limited by the capacity of the queues.
+ * 
+ * The transform stage is GoodCode itself, so everything which GoodCodeTest proves is still true.
+ * FetchUsersTest and SaveOrderTest cover the other two stages.
+ * 
+ * With spillTo(), the transform stage never waits for the store. Orders which the store can't
+ * take yet go to a SpillingOrderBuffer which moves them to disk when there are too many.
+ * 
+ * Note: fetch and store are called from different threads. Don't let them share a connection
+ * unless your JDBC driver allows this.
+ */
+public class PipelinedGoodCode {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    
+    /** Marks the end of the data in a queue. */
+    private static final Object END = new Object();
+    /** BlockingQueue doesn't allow null, so we need a placeholder. */
+    private static final Object NULL = new Object();
+
+    private Supplier<Stream<User>> fetch;
+    private Consumer<Order> store;
+    private int capacity;
+    private Path spillDirectory;
+    private long memoryBudget = -1;
+
+    public PipelinedGoodCode(Supplier<List<User>> fetch, Consumer<Order> store) {
+        this(fetch, store, DEFAULT_CAPACITY);
+    }
+    
+    public PipelinedGoodCode(Supplier<List<User>> fetch, Consumer<Order> store, int capacity) {
+        this(store, capacity);
+        this.fetch = () -> fetch.get().stream();
+    }
+
+    private PipelinedGoodCode(Consumer<Order> store, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive but was " + capacity);
+        }
+        
+        this.store = store;
+        this.capacity = capacity;
+    }
+
+    /** Use with StreamUsers to make the database read overlap with the writes. See GoodCode.streaming(). */
+    public static PipelinedGoodCode streaming(Supplier<Stream<User>> fetch, Consumer<Order> store, int capacity) {
+        var result = new PipelinedGoodCode(store, capacity);
+        result.fetch = fetch;
+        return result;
+    }
+
+    /**
+     * Replace the queue between transform and store by a SpillingOrderBuffer. directory can be
+     * null for the default temporary directory.
+     */
+    public PipelinedGoodCode spillTo(Path directory, long memoryBudget) {
+        this.spillDirectory = directory;
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    public void doSomethingUseful() {
+        if (memoryBudget < 0) {
+            var orders = new ArrayBlockingQueue<Object>(capacity);
+            run(it -> put(orders, it), () -> put(orders, END), () -> store(orders));
+            return;
+        }
+        
+        try (var buffer = new SpillingOrderBuffer(spillDirectory, memoryBudget, SpillingOrderBuffer.DEFAULT_SEGMENT_SIZE)) {
+            run(buffer, buffer::finish, () -> buffer.drainTo(store));
+        }
+    }
+
+    private void run(Consumer<Order> orders, Runnable end, Runnable store) {
+        var users = new ArrayBlockingQueue<Object>(capacity);
+        
+        var executor = Executors.newFixedThreadPool(3);
+        try {
+            var stages = new ExecutorCompletionService<Void>(executor);
+            var futures = new ArrayList<Future<Void>>();
+            futures.add(stages.submit(() -> fetch(users), null));
+            futures.add(stages.submit(() -> transform(users, orders, end), null));
+            futures.add(stages.submit(store, null));
+            
+            await(stages, futures);
+        } finally {
+            shutdown(executor);
+        }
+    }
+
+    private void fetch(BlockingQueue<Object> users) {
+        try (var stream = fetch.get()) {
+            stream.forEach(it -> put(users, it == null ? NULL : it));
+        }
+        put(users, END);
+    }
+
+    private void transform(BlockingQueue<Object> users, Consumer<Order> orders, Runnable end) {
+        GoodCode.streaming(() -> stream(users), orders).doSomethingUseful();
+        end.run();
+    }
+
+    private void store(BlockingQueue<Object> orders) {
+        Object item;
+        while ((item = take(orders)) != END) {
+            store.accept((Order) item);
+        }
+    }
+
+    private Stream<User> stream(BlockingQueue<Object> users) {
+        var spliterator = new Spliterators.AbstractSpliterator<User>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super User> action) {
+                var item = take(users);
+                if (item == END) {
+                    return false;
+                }
+                
+                action.accept(item == NULL ? null : (User) item);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    private void put(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            throw interrupted(e);
+        }
+    }
+
+    private IllegalStateException interrupted(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new IllegalStateException("Pipeline stage was interrupted", e);
+    }
+
+    /**
+     * Wait for all stages. When a stage fails, the other ones are cancelled, since they would
+     * wait forever for data that never comes or for space in a queue that nobody drains.
+     * The first failure is thrown, the rest are usually just the result of the cancellation.
+     */
+    private void await(ExecutorCompletionService<Void> stages, List<Future<Void>> futures) {
+        RuntimeException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                stages.take().get();
+            } catch (CancellationException e) {
+                // Expected after a failure
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = unwrap(e);
+                    futures.forEach(it -> it.cancel(true));
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(it -> it.cancel(true));
+                throw interrupted(e);
+            }
+        }
+        
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private RuntimeException unwrap(ExecutionException e) {
+        var cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException("Pipeline stage failed", cause);
+    }
+
+    /** Don't return while a stage might still call store. */
+    private void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Stages only ignore the interrupt while they are inside fetch or store
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
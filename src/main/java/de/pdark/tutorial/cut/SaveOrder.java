@@ -4,21 +4,73 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.function.Consumer;
 
+import javax.sql.DataSource;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
 import de.pdark.tutorial.cut.model.Order;
 
 public class SaveOrder implements Consumer<Order> {
 
     private Connection connection;
+    private DataSource dataSource;
+    private Timer insertTimer = Timer.NOOP;
+    private Counter stored = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
 
     public SaveOrder(Connection connection) {
         this.connection = connection;
     }
 
+    /** Borrow a connection for each order. Only use this with a connection pool. */
+    public SaveOrder(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public SaveOrder metrics(MetricsRegistry metrics) {
+        insertTimer = metrics.timer(MetricNames.SQL_INSERT);
+        stored = metrics.counter(MetricNames.ORDERS_STORED);
+        errors = metrics.counter(MetricNames.STORE_ERRORS);
+        return this;
+    }
+
     public void accept(Order order) {
+        try {
+            borrowAndSave(order);
+            stored.increment();
+        } catch (RuntimeException e) {
+            errors.increment();
+            throw e;
+        }
+    }
+
+    private void borrowAndSave(Order order) {
+        if (dataSource == null) {
+            save(connection, order);
+            return;
+        }
+        
+        try (var connection = dataSource.getConnection()) {
+            save(connection, order);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to borrow connection from " + dataSource + "\n order: " + order, e);
+        }
+    }
+
+    private void save(Connection connection, Order order) {
         var sql = "insert into orders(user_name) values (?)";
         try (var stmt2 = connection.prepareStatement(sql)) {
             stmt2.setString(1, order.getUser().getName()); // Note: In real code, this would be an ID
-            if (stmt2.executeUpdate() != 1) {
+            int count;
+            var start = insertTimer.start();
+            try {
+                count = stmt2.executeUpdate();
+            } finally {
+                insertTimer.stop(start);
+            }
+            if (count != 1) {
                 throw new SQLException("INSERT failed");
             }
         } catch (SQLException e) {
@@ -0,0 +1,50 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+
+/**
+ * Same result as GoodCode with FetchUsers and SaveOrder but with a single statement. The users
+ * never leave the database. Only works when users and orders are in the same database.
+ * 
+ * The business rules are in GoodCode.VALID_ORDER_SQL. When you change GoodCode.VALID_ORDER,
+ * ServerSideGoodCodeTest will tell you that this needs to change as well.
+ */
+public class ServerSideGoodCode {
+
+    static final String SQL = "insert into orders(user_name) select name from users where " + GoodCode.VALID_ORDER_SQL;
+
+    private Connection connection;
+    private Timer insertTimer = Timer.NOOP;
+    private Counter stored = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
+
+    public ServerSideGoodCode(Connection connection) {
+        this.connection = connection;
+    }
+
+    public ServerSideGoodCode metrics(MetricsRegistry metrics) {
+        insertTimer = metrics.timer(MetricNames.SQL_INSERT);
+        stored = metrics.counter(MetricNames.ORDERS_STORED);
+        errors = metrics.counter(MetricNames.STORE_ERRORS);
+        return this;
+    }
+
+    public void doSomethingUseful() {
+        try (var stmt = connection.prepareStatement(SQL)) {
+            var start = insertTimer.start();
+            var count = stmt.executeUpdate();
+            insertTimer.stop(start);
+            
+            stored.add(count);
+        } catch (SQLException e) {
+            errors.increment();
+            throw new IllegalStateException("Unable to store orders in database\nsql: " + SQL, e);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package de.pdark.tutorial.cut;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Sits between the transform and the store stage when the database can't keep up with the
+ * inserts. accept() never waits: Orders are kept on the heap until memoryBudget bytes are used,
+ * then they go to a temporary file. drainTo() hands all orders to the store in the order in
+ * which they were accepted. See PipelinedGoodCode.spillTo().
+ *
+ * The file is created on the first spill and mapped into memory in segments of segmentSize
+ * bytes. Each order is written as the length of the UTF-8 name followed by the bytes. A segment
+ * which the store has read completely goes back to a free list and is written again later, so
+ * the file and the number of mappings are only as big as the largest backlog. When the store has
+ * read everything from the file, the next orders are kept in memory again.
+ *
+ * One thread calls accept() and finish(), another one drainTo(). close() deletes the file, no
+ * matter whether the run succeeded or failed. When that isn't possible (Windows doesn't delete
+ * files which are still mapped), the file is deleted when the VM exits.
+ */
+public class SpillingOrderBuffer implements Consumer<Order>, AutoCloseable {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+
+    /** Rough heap size of an Order with its User and name, without the characters */
+    static final int ORDER_OVERHEAD = 96;
+
+    private static final int NO_USER = -2;
+    private static final int NO_NAME = -1;
+    private static final int END_OF_SEGMENT = -3;
+
+    private static final Logger log = LoggerFactory.getLogger(SpillingOrderBuffer.class);
+
+    /** One mapped part of the file. write and read share the content but have their own position. */
+    private static class Segment {
+        private final MappedByteBuffer write;
+        private final ByteBuffer read;
+        
+        Segment(MappedByteBuffer mapping) {
+            this.write = mapping;
+            this.read = mapping.duplicate();
+        }
+        
+        void reset() {
+            write.clear();
+            read.clear();
+        }
+    }
+
+    private final Path directory;
+    private final long memoryBudget;
+    private final int segmentSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final ArrayDeque<Order> memory = new ArrayDeque<>();
+    private long memoryBytes;
+
+    private Path file;
+    private FileChannel channel;
+    /** Segments with unread orders in the order in which they were written. The last one is written. */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    /** Segments which were read completely */
+    private final ArrayDeque<Segment> free = new ArrayDeque<>();
+    /** Number of segments which are mapped so far */
+    private long mapped;
+    /** Orders in the file which drainTo() hasn't read yet */
+    private long spilled;
+
+    private boolean finished;
+    private boolean closed;
+    private Counter spilledCounter = Counter.NOOP;
+
+    /** Uses the default temporary directory */
+    public SpillingOrderBuffer(long memoryBudget) {
+        this(null, memoryBudget, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** directory can be null for the default temporary directory */
+    public SpillingOrderBuffer(Path directory, long memoryBudget, int segmentSize) {
+        if (memoryBudget < 0) {
+            throw new IllegalArgumentException("memoryBudget must not be negative but was " + memoryBudget);
+        }
+        if (segmentSize < 16) {
+            throw new IllegalArgumentException("segmentSize must be at least 16 but was " + segmentSize);
+        }
+
+        this.directory = directory;
+        this.memoryBudget = memoryBudget;
+        this.segmentSize = segmentSize;
+    }
+
+    public SpillingOrderBuffer metrics(MetricsRegistry metrics) {
+        spilledCounter = metrics.counter(MetricNames.ORDERS_SPILLED);
+        return this;
+    }
+
+    @Override
+    public void accept(Order order) {
+        lock.lock();
+        try {
+            if (finished || closed) {
+                throw new IllegalStateException("Buffer doesn't accept orders anymore\norder: " + order);
+            }
+
+            // Once we spill, everything has to go to the file until it's drained to keep the order
+            var size = estimateSize(order);
+            if (spilled == 0 && memoryBytes + size <= memoryBudget) {
+                memory.add(order);
+                memoryBytes += size;
+            } else {
+                spill(order);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** No more orders will come. drainTo() returns when it has passed on everything. */
+    public void finish() {
+        lock.lock();
+        try {
+            finished = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Waits for orders and passes them to store until finish() was called and all are gone. */
+    public void drainTo(Consumer<Order> store) {
+        Order order;
+        while ((order = take()) != null) {
+            store.accept(order);
+        }
+    }
+
+    /** Bytes on the heap right now, as estimated by estimateSize() */
+    public long memoryBytes() {
+        lock.lock();
+        try {
+            return memoryBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** The temporary file or null when nothing was spilled yet */
+    public Path file() {
+        lock.lock();
+        try {
+            return file;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            memory.clear();
+            memoryBytes = 0;
+            spilled = 0;
+            // The mappings go away with the garbage collector
+            segments.clear();
+            free.clear();
+            notEmpty.signalAll();
+
+            if (file != null) {
+                deleteFile();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static long estimateSize(Order order) {
+        var user = order.getUser();
+        var name = user == null ? null : user.getName();
+        return ORDER_OVERHEAD + (name == null ? 0 : 2L * name.length());
+    }
+
+    /** The next order or null at the end */
+    private Order take() {
+        lock.lock();
+        try {
+            while (memory.isEmpty() && spilled == 0) {
+                if (finished || closed) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+
+            var order = memory.poll();
+            if (order != null) {
+                memoryBytes -= estimateSize(order);
+                return order;
+            }
+            return readSpilled();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for orders was interrupted", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void spill(Order order) {
+        var user = order.getUser();
+        var name = user == null ? null : user.getName();
+        var bytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+        var length = Integer.BYTES + (bytes == null ? 0 : bytes.length);
+        if (length > segmentSize) {
+            throw new IllegalArgumentException("Order needs " + length + " bytes but segmentSize is only " + segmentSize + "\norder: " + order);
+        }
+
+        if (file == null) {
+            open();
+        }
+        var writeBuffer = segments.isEmpty() ? null : segments.getLast().write;
+        if (writeBuffer == null || writeBuffer.remaining() < length) {
+            if (writeBuffer != null && writeBuffer.remaining() >= Integer.BYTES) {
+                writeBuffer.putInt(END_OF_SEGMENT);
+            }
+            writeBuffer = nextSegment().write;
+        }
+
+        if (bytes == null) {
+            writeBuffer.putInt(user == null ? NO_USER : NO_NAME);
+        } else {
+            writeBuffer.putInt(bytes.length);
+            writeBuffer.put(bytes);
+        }
+        spilled++;
+        spilledCounter.increment();
+    }
+
+    private Order readSpilled() {
+        var readBuffer = segments.getFirst().read;
+        if (readBuffer.remaining() < Integer.BYTES || readBuffer.getInt(readBuffer.position()) == END_OF_SEGMENT) {
+            // The writer has moved on to the next segment, so we can reuse this one
+            free.add(segments.removeFirst());
+            readBuffer = segments.getFirst().read;
+        }
+
+        var length = readBuffer.getInt();
+        var order = new Order();
+        if (length != NO_USER) {
+            var user = new User();
+            if (length != NO_NAME) {
+                var bytes = new byte[length];
+                readBuffer.get(bytes);
+                user.setName(new String(bytes, StandardCharsets.UTF_8));
+            }
+            order.setUser(user);
+        }
+
+        spilled--;
+        if (spilled == 0) {
+            rewind();
+        }
+        return order;
+    }
+
+    private void open() {
+        try {
+            file = directory == null
+                    ? Files.createTempFile("orders", ".spill")
+                    : Files.createTempFile(directory, "orders", ".spill");
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            if (file != null) {
+                deleteFile(); // The next spill starts over with a new file
+            }
+            throw new UncheckedIOException("Unable to create spill file in " + (directory == null ? "temporary directory" : directory.toAbsolutePath()), e);
+        }
+    }
+
+    /** The file is empty, all segments can be written again */
+    private void rewind() {
+        free.addAll(segments);
+        segments.clear();
+    }
+
+    /** A free segment or a new one at the end of the file */
+    private Segment nextSegment() {
+        var result = free.poll();
+        if (result == null) {
+            result = new Segment(map(mapped));
+            mapped++;
+        }
+        result.reset();
+        segments.add(result);
+        return result;
+    }
+
+    private MappedByteBuffer map(long segment) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_WRITE, segment * segmentSize, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map segment " + segment + " of " + file.toAbsolutePath(), e);
+        }
+    }
+
+    /** Best effort, a file which is left over must not fail the run */
+    private void deleteFile() {
+        try {
+            if (channel != null) { // null when open() failed after creating the file
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.debug("Unable to close {}", file, e);
+        }
+
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Unable to delete {}, will try again when the VM exits", file.toAbsolutePath(), e);
+            file.toFile().deleteOnExit();
+        } finally {
+            channel = null;
+            file = null;
+            mapped = 0;
+        }
+    }
+
+    /** Number of segments which are mapped right now */
+    int mappedSegments() {
+        lock.lock();
+        try {
+            return (int) mapped;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * Same query as FetchUsers but the users are handed out one by one while the cursor moves
+ * through the result set. The heap no longer grows with the size of the table.
+ * 
+ * The returned stream holds an open cursor. Always close it, preferably with try-with-resources.
+ * 
+ * Some drivers, PostgreSQL for example, only stream the rows inside a transaction. In auto-commit
+ * mode, they load the whole result set anyway. A connection which is borrowed from a DataSource
+ * is switched to manual commit while the cursor is open. When you pass in a connection, switch
+ * off auto-commit yourself.
+ */
+public class StreamUsers implements Supplier<Stream<User>> {
+
+    /** Rows per round trip. Big enough to avoid chatty network traffic, small enough to keep the heap flat. */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private Connection connection;
+    private DataSource dataSource;
+    private int fetchSize;
+    private Timer queryTimer = Timer.NOOP;
+    private Counter fetched = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
+
+    public StreamUsers(Connection connection) {
+        this(connection, DEFAULT_FETCH_SIZE);
+    }
+
+    public StreamUsers(Connection connection, int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("fetchSize must be positive but was " + fetchSize);
+        }
+        
+        this.connection = connection;
+        this.fetchSize = fetchSize;
+    }
+
+    /** Borrow a connection for each call of get(). It's returned when the stream is closed. See above for auto-commit. */
+    public StreamUsers(DataSource dataSource) {
+        this(dataSource, DEFAULT_FETCH_SIZE);
+    }
+
+    public StreamUsers(DataSource dataSource, int fetchSize) {
+        this((Connection) null, fetchSize);
+        this.dataSource = dataSource;
+    }
+
+    public StreamUsers metrics(MetricsRegistry metrics) {
+        queryTimer = metrics.timer(MetricNames.SQL_QUERY);
+        fetched = metrics.counter(MetricNames.USERS_FETCHED);
+        errors = metrics.counter(MetricNames.FETCH_ERRORS);
+        return this;
+    }
+
+    public Stream<User> get() {
+        if (dataSource == null) {
+            return query(connection);
+        }
+        
+        Connection borrowed;
+        try {
+            borrowed = dataSource.getConnection();
+        } catch (SQLException e) {
+            errors.increment();
+            throw new IllegalStateException("Unable to borrow connection from " + dataSource, e);
+        }
+        
+        boolean autoCommit;
+        try {
+            autoCommit = borrowed.getAutoCommit();
+        } catch (SQLException e) {
+            errors.increment();
+            throw giveBackAfterError(borrowed, true, new IllegalStateException("Unable to read auto-commit of " + borrowed, e));
+        }
+        
+        try {
+            borrowed.setAutoCommit(false);
+        } catch (SQLException e) {
+            errors.increment();
+            throw giveBackAfterError(borrowed, autoCommit, new IllegalStateException("Unable to switch off auto-commit for " + borrowed, e));
+        }
+        
+        try {
+            return query(borrowed).onClose(() -> giveBack(borrowed, autoCommit));
+        } catch (RuntimeException e) {
+            throw giveBackAfterError(borrowed, autoCommit, e);
+        }
+    }
+
+    private RuntimeException giveBackAfterError(Connection borrowed, boolean autoCommit, RuntimeException error) {
+        try {
+            giveBack(borrowed, autoCommit);
+        } catch (RuntimeException e) {
+            error.addSuppressed(e);
+        }
+        return error;
+    }
+
+    /** We only read, so there is nothing to commit. */
+    private void giveBack(Connection borrowed, boolean autoCommit) {
+        try {
+            try {
+                if (borrowed.getAutoCommit() != autoCommit) {
+                    borrowed.rollback();
+                    borrowed.setAutoCommit(autoCommit);
+                }
+            } finally {
+                borrowed.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to return connection to " + dataSource, e);
+        }
+    }
+
+    private Stream<User> query(Connection connection) {
+        var sql = "select " + UserMapper.INSTANCE.selectList() + " from users";
+        PreparedStatement stmt = null;
+        try {
+            // Forward-only and read-only allow the driver to stream instead of caching the rows. Some also need a transaction, see above.
+            stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            var start = queryTimer.start();
+            var cursor = new Cursor(sql, stmt, stmt.executeQuery());
+            queryTimer.stop(start);
+            
+            return StreamSupport.stream(cursor, false).onClose(cursor::close);
+        } catch (SQLException e) {
+            errors.increment();
+            var error = new IllegalStateException("Unable to query database: " + sql, e);
+            closeAfterError(stmt, error);
+            throw error;
+        }
+    }
+
+    private void closeAfterError(PreparedStatement stmt, Exception error) {
+        if (stmt == null) {
+            return;
+        }
+        
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            error.addSuppressed(e);
+        }
+    }
+
+    private class Cursor extends Spliterators.AbstractSpliterator<User> {
+        private String sql;
+        private PreparedStatement stmt;
+        private ResultSet ps;
+        private int[] indices;
+
+        public Cursor(String sql, PreparedStatement stmt, ResultSet ps) throws SQLException {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.sql = sql;
+            this.stmt = stmt;
+            this.ps = ps;
+            this.indices = UserMapper.INSTANCE.resolve(ps.getMetaData());
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super User> action) {
+            User user;
+            try {
+                if (!ps.next()) {
+                    close(); // Release the cursor as soon as possible, even when the caller forgets to close the stream
+                    return false;
+                }
+                
+                user = UserMapper.INSTANCE.map(ps, indices);
+                fetched.increment();
+            } catch (SQLException e) {
+                errors.increment();
+                throw new IllegalStateException("Unable to read next row from database: " + sql, e);
+            }
+            
+            action.accept(user);
+            return true;
+        }
+
+        /** Called when the stream is closed. That happens after the last row, early termination or errors. */
+        public void close() {
+            try {
+                try {
+                    ps.close();
+                } finally {
+                    stmt.close(); // Even when closing the result set failed
+                }
+            } catch (SQLException e) {
+                throw new IllegalStateException("Unable to close cursor: " + sql, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import de.pdark.tutorial.cut.model.Order;
+
+/**
+ * Stores orders on several connections at the same time. Each connection (stripe) has its own
+ * writer thread which uses BatchSaveOrder.
+ * 
+ * All orders of a user go to the same stripe, so they are stored in the order in which they
+ * were passed to accept(). There is no order between different users.
+ * 
+ * Call flush() to wait until all orders so far have been stored. close() does the same and then
+ * releases the threads and connections. Both throw the first error which happened in any stripe.
+ * After an error, accept() fails immediately.
+ * 
+ * The writer threads are daemons, so a forgotten close() doesn't keep the JVM alive. When one
+ * of them dies from an Error, flush() and accept() notice that and fail instead of waiting for it.
+ */
+public class StripedSaveOrder implements Consumer<Order>, AutoCloseable {
+
+    private static final Object END = new Object();
+    /** How often waiting callers check whether the writer threads are still alive */
+    private static final long POLL_MILLIS = 100;
+    
+    private DataSource dataSource;
+    private List<Stripe> stripes = new ArrayList<>();
+    private AtomicReference<IllegalStateException> failure = new AtomicReference<>();
+    private boolean closed;
+
+    public StripedSaveOrder(DataSource dataSource, int stripes) {
+        this(dataSource, stripes, BatchSaveOrder.DEFAULT_BATCH_SIZE);
+    }
+    
+    public StripedSaveOrder(DataSource dataSource, int stripes, int batchSize) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive but was " + stripes);
+        }
+        
+        this.dataSource = dataSource;
+        try {
+            for (int i = 0; i < stripes; i++) {
+                this.stripes.add(new Stripe(i, batchSize));
+            }
+        } catch (RuntimeException e) {
+            stop(e);
+            throw e;
+        }
+        this.stripes.forEach(it -> it.thread.start());
+    }
+
+    public void accept(Order order) {
+        if (closed) {
+            throw new IllegalStateException("Writer was closed, order: " + order);
+        }
+        throwFailure();
+        
+        var key = Objects.hashCode(order.getUser().getName()); // Note: In real code, this would be an ID
+        var stripe = stripes.get(Math.floorMod(key, stripes.size()));
+        stripe.put(order);
+    }
+
+    /** Wait until every stripe has sent its orders to the database. */
+    public void flush() {
+        if (closed) {
+            throw new IllegalStateException("Writer was closed");
+        }
+        
+        var barrier = new CountDownLatch(stripes.size());
+        stripes.forEach(it -> it.put(barrier));
+        
+        try {
+            while (!barrier.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                throwFailure(); // A stripe which died from an Error never counts down
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the writers", e);
+        }
+        
+        throwFailure();
+    }
+
+    private void throwFailure() {
+        var first = failure.get();
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        
+        RuntimeException error = null;
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+        
+        closed = true;
+        stop(error);
+    }
+
+    /** Stop all threads, close all connections. Throws the first error. */
+    private void stop(RuntimeException error) {
+        for (var stripe : stripes) {
+            try {
+                stripe.stop();
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private class Stripe implements Runnable {
+        private int index;
+        private Connection connection;
+        private BatchSaveOrder store;
+        private BlockingQueue<Object> queue;
+        private Thread thread;
+
+        public Stripe(int index, int batchSize) {
+            this.index = index;
+            try {
+                this.connection = dataSource.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Unable to borrow connection for stripe " + index + " from " + dataSource, e);
+            }
+            this.store = new BatchSaveOrder(connection, batchSize);
+            this.queue = new ArrayBlockingQueue<>(batchSize * 2); // Writer can send one batch while we collect the next one
+            this.thread = new Thread(this, "order-writer-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        public void put(Object item) {
+            try {
+                while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    throwFailure(); // Nobody takes items from the queue of a dead writer
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for stripe " + index, e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                loop();
+            } catch (Error e) {
+                fail(e);
+                throw e;
+            } finally {
+                // Don't let flush() wait for a writer which is gone
+                queue.stream().filter(it -> it instanceof CountDownLatch).forEach(it -> ((CountDownLatch) it).countDown());
+            }
+        }
+
+        private void loop() {
+            while (true) {
+                Object item;
+                try {
+                    item = queue.take();
+                } catch (InterruptedException e) {
+                    fail(new IllegalStateException("Writer of stripe " + index + " was interrupted", e));
+                    return;
+                }
+                
+                if (item == END) {
+                    return;
+                }
+                
+                try {
+                    if (item instanceof CountDownLatch) {
+                        store.flush();
+                    } else if (failure.get() == null) { // After a failure, orders are dropped until the caller notices
+                        store.accept((Order) item);
+                    }
+                } catch (RuntimeException e) {
+                    fail(e);
+                } catch (Error e) {
+                    fail(e);
+                    throw e;
+                } finally {
+                    if (item instanceof CountDownLatch) {
+                        ((CountDownLatch) item).countDown(); // Only after fail(), so flush() can see the error
+                    }
+                }
+            }
+        }
+
+        private void fail(Throwable e) {
+            var wrapped = new IllegalStateException("Stripe " + index + " of " + stripes.size() + " failed: " + e.getMessage(), e);
+            failure.compareAndSet(null, wrapped);
+        }
+
+        public void stop() {
+            if (thread.isAlive()) {
+                queue.clear(); // Make room for END. After flush(), only orders which we drop anyway can be left.
+                put(END);
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for stripe " + index, e);
+                }
+            }
+            
+            try {
+                store.close(); // Only releases the statement, flush() already sent everything
+            } finally {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Unable to return connection of stripe " + index + " to " + dataSource, e);
+                }
+            }
+        }
+    }
+}
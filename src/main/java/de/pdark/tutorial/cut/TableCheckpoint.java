@@ -0,0 +1,69 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Keeps the key in the table checkpoints, using the same connection as the orders. The key is
+ * committed together with the orders, so a crash can't leave one without the other.
+ * 
+ *     create table checkpoints (job varchar(256) primary key, last_key varchar(1024) not null)
+ */
+public class TableCheckpoint implements Checkpoint {
+
+    private static final String LOAD_SQL = "select last_key from checkpoints where job = ?";
+    private static final String SAVE_SQL = "merge into checkpoints (job, last_key) key (job) values (?, ?)";
+    private static final String CLEAR_SQL = "delete from checkpoints where job = ?";
+
+    private Connection connection;
+    private String job;
+
+    /** @param job Several jobs can share the table */
+    public TableCheckpoint(Connection connection, String job) {
+        this.connection = connection;
+        this.job = job;
+    }
+
+    @Override
+    public String load() {
+        try (var stmt = connection.prepareStatement(LOAD_SQL)) {
+            stmt.setString(1, job);
+            try (var ps = stmt.executeQuery()) {
+                return ps.next() ? ps.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to read checkpoint\nsql: " + LOAD_SQL + "\njob: " + job, e);
+        }
+    }
+
+    @Override
+    public void save(String key) {
+        try (var stmt = connection.prepareStatement(SAVE_SQL)) {
+            stmt.setString(1, job);
+            stmt.setString(2, key);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to save checkpoint\nsql: " + SAVE_SQL + "\njob: " + job + "\nkey: " + key, e);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try (var stmt = connection.prepareStatement(CLEAR_SQL)) {
+            stmt.setString(1, job);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to delete checkpoint\nsql: " + CLEAR_SQL + "\njob: " + job, e);
+        }
+    }
+
+    @Override
+    public boolean isTransactional() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "TableCheckpoint(" + job + ")";
+    }
+}
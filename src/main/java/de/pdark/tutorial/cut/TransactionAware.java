@@ -0,0 +1,13 @@
+package de.pdark.tutorial.cut;
+
+/**
+ * A store which keeps state about the orders of the current transaction. TransactionalSaveOrder
+ * tells it when the transaction ends. Wrappers should pass both calls on to the store they wrap.
+ */
+public interface TransactionAware {
+    /** All orders since the last commit or rollback are in the database now. */
+    void committed();
+    
+    /** All orders since the last commit or rollback are gone. They may be sent again. */
+    void rolledBack();
+}
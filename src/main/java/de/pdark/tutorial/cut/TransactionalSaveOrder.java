@@ -0,0 +1,252 @@
+package de.pdark.tutorial.cut;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+import de.pdark.tutorial.cut.metrics.Timer;
+import de.pdark.tutorial.cut.model.Order;
+
+/**
+ * Puts the orders into transactions of a controlled size: a commit happens after chunkSize
+ * orders or when the chunk is older than maxAge, whatever comes first. The age is checked when
+ * an order arrives, there is no background thread.
+ * 
+ * When storing or committing a chunk fails because of a transient problem like a deadlock or a
+ * serialization failure, the chunk is rolled back and all its orders are sent to store again.
+ * Earlier chunks are already committed and are not touched. A chunk which was sent again is
+ * committed right away, even when it's not full. After attempts failures or any other error, the
+ * chunk is rolled back and dropped and an exception is thrown. Sending it again wouldn't help.
+ * 
+ * When store is TransactionAware, it's told about every commit and rollback.
+ * 
+ * The connection must be the one which store uses. Auto-commit is switched off while this
+ * is in use and restored by close(). Don't forget to close this, or the last chunk is lost.
+ */
+public class TransactionalSaveOrder implements Consumer<Order>, Flushable, AutoCloseable {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final int DEFAULT_ATTEMPTS = 3;
+
+    private Connection connection;
+    private Consumer<Order> store;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private Duration maxAge;
+    private int attempts = DEFAULT_ATTEMPTS;
+    private Boolean autoCommit;
+    private List<Order> chunk = new ArrayList<>();
+    private long chunkStart;
+    private Timer commitTimer = Timer.NOOP;
+    private Counter committed = Counter.NOOP;
+    private Counter retried = Counter.NOOP;
+    private Counter errors = Counter.NOOP;
+
+    public TransactionalSaveOrder(Connection connection, Consumer<Order> store) {
+        this.connection = connection;
+        this.store = store;
+    }
+
+    public TransactionalSaveOrder chunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive but was " + chunkSize);
+        }
+        
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /** null means no time limit (the default) */
+    public TransactionalSaveOrder maxAge(Duration maxAge) {
+        this.maxAge = maxAge;
+        return this;
+    }
+
+    public TransactionalSaveOrder attempts(int attempts) {
+        if (attempts < 1) {
+            throw new IllegalArgumentException("attempts must be positive but was " + attempts);
+        }
+        
+        this.attempts = attempts;
+        return this;
+    }
+
+    public TransactionalSaveOrder metrics(MetricsRegistry metrics) {
+        commitTimer = metrics.timer(MetricNames.SQL_COMMIT);
+        committed = metrics.counter(MetricNames.CHUNKS_COMMITTED);
+        retried = metrics.counter(MetricNames.CHUNKS_RETRIED);
+        errors = metrics.counter(MetricNames.STORE_ERRORS);
+        return this;
+    }
+
+    @Override
+    public void accept(Order order) {
+        if (chunk.isEmpty()) {
+            begin();
+        }
+        
+        chunk.add(order);
+        try {
+            store.accept(order);
+        } catch (RuntimeException e) {
+            commitChunk(e);
+            return;
+        }
+        
+        if (chunk.size() >= chunkSize || isTooOld()) {
+            flush();
+        }
+    }
+
+    private void begin() {
+        try {
+            if (autoCommit == null) {
+                autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to switch off auto-commit for " + connection, e);
+        }
+        chunkStart = System.nanoTime();
+    }
+
+    private boolean isTooOld() {
+        return maxAge != null && System.nanoTime() - chunkStart >= maxAge.toNanos();
+    }
+
+    /** Commit the current chunk */
+    @Override
+    public void flush() {
+        if (!chunk.isEmpty()) {
+            commitChunk(null);
+        }
+    }
+
+    /** failure != null means the first attempt already failed */
+    private void commitChunk(RuntimeException failure) {
+        int attempt = 1;
+        while (true) {
+            if (failure != null) {
+                if (attempt >= attempts || !isTransient(failure)) {
+                    giveUp(failure, attempt);
+                }
+                
+                attempt ++;
+                retried.increment();
+                rollback(failure);
+            }
+            
+            try {
+                if (attempt > 1) {
+                    chunk.forEach(store);
+                }
+                flushStore();
+                commit();
+                
+                if (store instanceof TransactionAware aware) {
+                    aware.committed();
+                }
+                committed.increment();
+                chunk.clear();
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * SQLTransientException includes SQLTransactionRollbackException. Drivers which don't use the
+     * subclasses report serialization failures and deadlocks with SQL state class 40.
+     */
+    static boolean isTransient(Throwable failure) {
+        for (var cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientException) {
+                return true;
+            }
+            if (cause instanceof SQLException e && e.getSQLState() != null && e.getSQLState().startsWith("40")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void giveUp(RuntimeException failure, int attempt) {
+        rollback(failure);
+        errors.add(chunk.size());
+        var error = new IllegalStateException("Unable to store chunk of " + chunk.size() + " orders after "
+                + attempt + " attempts\nfirst order: " + chunk.get(0) + "\nlast order: " + chunk.get(chunk.size() - 1), failure);
+        chunk.clear();
+        throw error;
+    }
+
+    private void flushStore() {
+        if (store instanceof Flushable flushable) {
+            try {
+                flushable.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to flush " + store, e);
+            }
+        }
+    }
+
+    private void commit() {
+        var start = commitTimer.start();
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to commit " + chunk.size() + " orders", e);
+        } finally {
+            commitTimer.stop(start);
+        }
+    }
+
+    private void rollback(RuntimeException failure) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            failure.addSuppressed(e);
+        }
+        
+        if (store instanceof TransactionAware aware) {
+            try {
+                aware.rolledBack();
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    /** Commits the last chunk and restores auto-commit. */
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            restoreAutoCommit();
+        }
+    }
+
+    private void restoreAutoCommit() {
+        if (autoCommit == null) {
+            return;
+        }
+        
+        try {
+            connection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Unable to restore auto-commit for " + connection, e);
+        } finally {
+            autoCommit = null;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.pdark.tutorial.cut;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import de.pdark.tutorial.cut.database.RowMapper;
+import de.pdark.tutorial.cut.model.NamePool;
+import de.pdark.tutorial.cut.model.User;
+
+/** Shared by all the classes which fetch users, so they read a row in exactly the same way. */
+public class UserMapper implements RowMapper<User> {
+    
+    public static final UserMapper INSTANCE = new UserMapper();
+
+    private static final List<String> COLUMNS = List.of("name");
+
+    /** null when every row keeps its own name */
+    private final NamePool pool;
+
+    public UserMapper() {
+        this(null);
+    }
+
+    /** Repeated names share one String from the pool */
+    public UserMapper(NamePool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public List<String> columns() {
+        return COLUMNS;
+    }
+
+    @Override
+    public User map(ResultSet ps, int[] indices) throws SQLException {
+        var user = new User();
+        var name = ps.getString(indices[0]);
+        user.setName(pool == null ? name : pool.intern(name));
+        // copy all the other fields...
+        
+        return user;
+    }
+}
@@ -0,0 +1,95 @@
+package de.pdark.tutorial.cut;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import de.pdark.tutorial.cut.metrics.Counter;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.MetricsRegistry;
+
+/**
+ * Remembers which users were already validated and processed, together with a change marker (for
+ * example a version or an updated-at column). As long as the marker stays the same, the user
+ * doesn't need to be validated again. The key must be unique per user, for example the primary
+ * key. See CachingFetchUsers.
+ * 
+ * Only the marker is cached, not whether the user was valid: a user which is skipped doesn't
+ * need the result, and the validator of the run decides for all other users.
+ * 
+ * The cache holds at most maxSize users. When it's full, the user which was used least
+ * recently is dropped. Keep the instance around between runs, otherwise it's useless.
+ */
+public class ValidationCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1_000_000;
+
+    private final int maxSize;
+    private final Map<Object, Object> entries;
+    private Counter hits = Counter.NOOP;
+    private Counter misses = Counter.NOOP;
+    private Counter evictions = Counter.NOOP;
+
+    public ValidationCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ValidationCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+        }
+        
+        this.maxSize = maxSize;
+        // Access order turns the map into a LRU list
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                if (size() <= ValidationCache.this.maxSize) {
+                    return false;
+                }
+                
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    public ValidationCache metrics(MetricsRegistry metrics) {
+        hits = metrics.counter(MetricNames.CACHE_HITS);
+        misses = metrics.counter(MetricNames.CACHE_MISSES);
+        evictions = metrics.counter(MetricNames.CACHE_EVICTIONS);
+        return this;
+    }
+
+    /** false when the user is unknown or the marker has changed. */
+    public synchronized boolean contains(Object key, Object marker) {
+        // A null marker is a valid value, so containsKey() tells us whether the user is known
+        if (!entries.containsKey(key) || !Objects.equals(entries.get(key), marker)) {
+            misses.increment();
+            return false;
+        }
+        
+        hits.increment();
+        return true;
+    }
+
+    public synchronized void put(Object key, Object marker) {
+        entries.put(key, marker);
+    }
+
+    /** The user will be validated and processed again in the next run. */
+    public synchronized void invalidate(Object key) {
+        entries.remove(key);
+    }
+
+    /** For example after the orders table was restored from a backup. */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
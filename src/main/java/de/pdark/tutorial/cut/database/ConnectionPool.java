@@ -0,0 +1,493 @@
+package de.pdark.tutorial.cut.database;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small pool of JDBC connections.
+ * 
+ * - At most maxSize physical connections are opened. When all are in use, callers wait up to borrowTimeout.
+ * - Connections which were idle for longer than idleTimeout are closed.
+ * - Connections are validated before they are handed out. Broken ones are replaced.
+ * - Connections which are borrowed for longer than leakThreshold are logged together with the stack trace
+ *   of the code which borrowed them.
+ * 
+ * Calling close() on a borrowed connection returns it to the pool. Uncommitted work is rolled back
+ * and auto commit, read only, transaction isolation, catalog and schema are restored. 
+ * 
+ * Talking to the database (connect, validate, close) always happens without holding the lock,
+ * so one slow or dead connection doesn't block everyone else.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+    
+    private String url;
+    private String user;
+    private String password;
+    private int maxSize = 10;
+    private Duration borrowTimeout = Duration.ofSeconds(30);
+    private Duration idleTimeout = Duration.ofMinutes(10);
+    private Duration leakThreshold = Duration.ofMinutes(1);
+    private int validationTimeoutSeconds = 5;
+    
+    private ReentrantLock lock = new ReentrantLock();
+    private Condition available = lock.newCondition();
+    /** Most recently returned first. That way, rarely needed connections collect at the end and get evicted. */
+    private Deque<Idle> idle = new ArrayDeque<>();
+    private Set<Lease> borrowed = new LinkedHashSet<>();
+    private int open;
+    private boolean closed;
+
+    public ConnectionPool(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+    
+    public ConnectionPool maxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        return this;
+    }
+    
+    public ConnectionPool borrowTimeout(Duration borrowTimeout) {
+        this.borrowTimeout = borrowTimeout;
+        return this;
+    }
+    
+    public ConnectionPool idleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+    
+    /** Duration.ZERO disables leak detection. */
+    public ConnectionPool leakThreshold(Duration leakThreshold) {
+        this.leakThreshold = leakThreshold;
+        return this;
+    }
+    
+    public ConnectionPool validationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        return this;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long deadline = System.nanoTime() + borrowTimeout.toNanos();
+        var evicted = new ArrayList<Physical>();
+        
+        lock.lock();
+        try {
+            while (true) {
+                assertOpen();
+                evictIdle(System.nanoTime(), evicted);
+                checkLeaks(System.nanoTime());
+                
+                var candidate = idle.pollFirst();
+                if (candidate != null) {
+                    var connection = validate(candidate.connection);
+                    if (connection != null) {
+                        return lease(connection);
+                    }
+                    continue;
+                }
+                
+                if (open < maxSize) {
+                    return lease(openConnection());
+                }
+                
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SQLTransientConnectionException("Timeout after " + borrowTimeout
+                            + " waiting for a connection\nurl=" + url + "\nuser=" + user + "\nmaxSize=" + maxSize);
+                }
+                available.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection\nurl=" + url, e);
+        } finally {
+            lock.unlock();
+            close(evicted);
+        }
+    }
+
+    private void assertOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool was closed\nurl=" + url);
+        }
+    }
+
+    /**
+     * Returns null when the connection is broken. The broken connection is closed. The caller
+     * has already taken the connection out of idle, so we can release the lock while we wait
+     * for the database.
+     */
+    private Physical validate(Physical connection) {
+        lock.unlock();
+        var valid = false;
+        try {
+            valid = connection.connection.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            log.debug("Validation failed for {}", connection.connection, e);
+        } finally {
+            // Also when the driver throws a RuntimeException: getConnection() expects to hold the lock
+            if (!valid) {
+                close(connection);
+            }
+            
+            lock.lock();
+            if (!valid) {
+                open --;
+                available.signal();
+            }
+        }
+        return valid ? connection : null;
+    }
+
+    private Physical openConnection() throws SQLException {
+        open ++; // Reserve the slot, then release the lock while we wait for the database
+        lock.unlock();
+        Physical result = null;
+        try {
+            result = new Physical(DriverManager.getConnection(url, user, password));
+            return result;
+        } catch (SQLException e) {
+            throw new SQLException("Unable to connect to database\nurl=" + url + "\nuser=" + user, e);
+        } finally {
+            lock.lock();
+            if (result == null) {
+                open --;
+                available.signal();
+            }
+        }
+    }
+
+    private Connection lease(Physical connection) {
+        var stackTrace = leakThreshold.isZero() ? null : new Exception("Connection was borrowed here");
+        var lease = new Lease(connection, System.nanoTime(), stackTrace);
+        borrowed.add(lease);
+        
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> lease.invoke(proxy, method, args)
+        );
+    }
+
+    private void giveBack(Lease lease) {
+        var connection = lease.connection;
+        var reusable = reset(connection);
+        
+        lock.lock();
+        try {
+            borrowed.remove(lease);
+            if (reusable && !closed) {
+                idle.addFirst(new Idle(connection, System.nanoTime()));
+                connection = null;
+            } else {
+                open --;
+            }
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        
+        if (connection != null) {
+            close(connection);
+        }
+    }
+
+    /** The next borrower must not see the transaction or the settings of the previous one. */
+    private boolean reset(Physical pooled) {
+        var connection = pooled.connection;
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (connection.isReadOnly() != pooled.readOnly) {
+                connection.setReadOnly(pooled.readOnly);
+            }
+            if (connection.getTransactionIsolation() != pooled.isolation) {
+                connection.setTransactionIsolation(pooled.isolation);
+            }
+            if (!Objects.equals(connection.getCatalog(), pooled.catalog)) {
+                connection.setCatalog(pooled.catalog);
+            }
+            if (!Objects.equals(connection.getSchema(), pooled.schema)) {
+                connection.setSchema(pooled.schema);
+            }
+            return true;
+        } catch (SQLException e) {
+            log.debug("Unable to reset {}", connection, e);
+            return false;
+        }
+    }
+
+    /** Call without holding the lock. The caller has already decremented open. */
+    private void close(Physical connection) {
+        try {
+            connection.connection.close();
+        } catch (SQLException e) {
+            log.debug("Unable to close {}", connection.connection, e);
+        }
+    }
+
+    private void close(List<Physical> connections) {
+        connections.forEach(this::close);
+    }
+
+    /** Close connections which weren't used for a while. Happens automatically when a connection is borrowed. */
+    public void evictIdle() {
+        var evicted = new ArrayList<Physical>();
+        lock.lock();
+        try {
+            evictIdle(System.nanoTime(), evicted);
+        } finally {
+            lock.unlock();
+        }
+        close(evicted);
+    }
+
+    /** Moves the connections to evicted. Close them after the lock was released. */
+    private void evictIdle(long now, List<Physical> evicted) {
+        long timeout = idleTimeout.toNanos();
+        while (!idle.isEmpty() && now - idle.peekLast().since >= timeout) {
+            open --;
+            evicted.add(idle.pollLast().connection);
+        }
+    }
+
+    /**
+     * Log connections which are borrowed for longer than leakThreshold. Each leak is logged once.
+     * Happens automatically when a connection is borrowed.
+     * 
+     * @return the number of connections which are borrowed for longer than leakThreshold.
+     */
+    public int checkLeaks() {
+        lock.lock();
+        try {
+            return checkLeaks(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int checkLeaks(long now) {
+        if (leakThreshold.isZero()) {
+            return 0;
+        }
+        
+        int count = 0;
+        long threshold = leakThreshold.toNanos();
+        for (var lease : borrowed) {
+            if (now - lease.borrowedAt < threshold) {
+                continue;
+            }
+            
+            count ++;
+            if (!lease.reported) {
+                lease.reported = true;
+                log.warn("Possible connection leak: Connection to {} was borrowed {} ms ago and hasn't been returned, yet",
+                        url, TimeUnit.NANOSECONDS.toMillis(now - lease.borrowedAt), lease.stackTrace);
+            }
+        }
+        return count;
+    }
+    
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return borrowed.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Closes all idle connections. Borrowed connections are closed when they are returned. */
+    @Override
+    public void close() {
+        var evicted = new ArrayList<Physical>();
+        lock.lock();
+        try {
+            closed = true;
+            while (!idle.isEmpty()) {
+                open --;
+                evicted.add(idle.pollFirst().connection);
+            }
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        close(evicted);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("All connections of a pool use the same credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        // We use slf4j
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("We use slf4j");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException(getClass().getName() + " doesn't implement " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName()
+                + "(url=" + url
+                + ", maxSize=" + maxSize
+                + ")";
+    }
+
+    /** A physical connection and the settings which it had when it was opened. */
+    private static class Physical {
+        private Connection connection;
+        private boolean readOnly;
+        private int isolation;
+        private String catalog;
+        private String schema;
+
+        public Physical(Connection connection) throws SQLException {
+            this.connection = connection;
+            try {
+                readOnly = connection.isReadOnly();
+                isolation = connection.getTransactionIsolation();
+                catalog = connection.getCatalog();
+                schema = connection.getSchema();
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        }
+    }
+
+    private static class Idle {
+        private Physical connection;
+        private long since;
+
+        public Idle(Physical connection, long since) {
+            this.connection = connection;
+            this.since = since;
+        }
+    }
+
+    /** One borrowed connection. Calls on the proxy end up here. */
+    private class Lease {
+        private Physical connection;
+        private long borrowedAt;
+        private Exception stackTrace;
+        private boolean reported;
+        private volatile boolean returned;
+
+        public Lease(Physical connection, long borrowedAt, Exception stackTrace) {
+            this.connection = connection;
+            this.borrowedAt = borrowedAt;
+            this.stackTrace = stackTrace;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "close":
+                if (!returned) {
+                    returned = true;
+                    giveBack(this);
+                }
+                return null;
+            case "isClosed":
+                return returned || connection.connection.isClosed();
+            case "toString":
+                return "Pooled(" + connection.connection + ")";
+            case "hashCode":
+                return System.identityHashCode(this);
+            case "equals":
+                return proxy == args[0];
+            default:
+                break;
+            }
+            
+            if (returned) {
+                throw new SQLException("Connection was returned to the pool\nurl=" + url);
+            }
+            
+            try {
+                return method.invoke(connection.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package de.pdark.tutorial.cut.database;
+
+import javax.sql.DataSource;
+
+/** Connections for the create() factories. They all share one pool. */
+public class Database {
+
+    private static ConnectionPool pool;
+
+    public static synchronized DataSource pool() {
+        if (pool == null) {
+            pool = new ConnectionPool("jdbc:....", "...", "..."); // Bad: Hardcoded URL and credentials 
+        }
+        
+        return pool;
+    }
+}
@@ -0,0 +1,46 @@
+package de.pdark.tutorial.cut.database;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Turns rows into objects. The mapper declares the columns it needs, so queries can use an
+ * explicit select list instead of "select *".
+ * 
+ * Columns are resolved to their JDBC index once per result set with resolve(). map() then reads
+ * the values by index, without looking up a column name for every row.
+ */
+public interface RowMapper<T> {
+    
+    /** The columns which map() reads */
+    List<String> columns();
+    
+    /** Read the current row. indices contains the JDBC index of each column in columns(). */
+    T map(ResultSet ps, int[] indices) throws SQLException;
+    
+    /** For "select " + selectList() + " from ..." */
+    default String selectList() {
+        return String.join(", ", columns());
+    }
+    
+    /** Find the index of each column in columns(). Works with any query that contains the columns. */
+    default int[] resolve(ResultSetMetaData metaData) throws SQLException {
+        var columns = columns();
+        var result = new int[columns.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = indexOf(metaData, columns.get(i));
+        }
+        return result;
+    }
+    
+    private static int indexOf(ResultSetMetaData metaData, String column) throws SQLException {
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (metaData.getColumnLabel(i).equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        throw new SQLException("Missing column " + column);
+    }
+}
@@ -0,0 +1,107 @@
+package de.pdark.tutorial.cut.flow;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * The end of the chain, for example new ConsumerSubscriber<>(new BatchSaveOrder(connection)).
+ * 
+ * Never asks for more than batchSize items. More are requested when half of them have been
+ * stored, so a slow store throttles the publisher. When the publisher is done, a Flushable
+ * store is flushed. Use await() to wait for the end and to get errors.
+ */
+public class ConsumerSubscriber<T> implements Flow.Subscriber<T> {
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final Consumer<T> store;
+    private final int batchSize;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private Flow.Subscription subscription;
+    private long outstanding;
+
+    public ConsumerSubscriber(Consumer<T> store) {
+        this(store, DEFAULT_BATCH_SIZE);
+    }
+
+    public ConsumerSubscriber(Consumer<T> store, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive but was " + batchSize);
+        }
+        
+        this.store = store;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription, "subscription");
+        if (this.subscription != null) {
+            subscription.cancel(); // Can only be used once
+            return;
+        }
+        
+        this.subscription = subscription;
+        outstanding = batchSize;
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(T item) {
+        if (done.isDone()) {
+            return;
+        }
+        
+        try {
+            store.accept(item);
+        } catch (RuntimeException e) {
+            subscription.cancel();
+            done.completeExceptionally(e);
+            return;
+        }
+        
+        outstanding --;
+        if (outstanding <= batchSize / 2) {
+            var more = batchSize - outstanding;
+            outstanding = batchSize;
+            subscription.request(more);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        done.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        try {
+            if (store instanceof Flushable flushable) {
+                flushable.flush();
+            }
+            done.complete(null);
+        } catch (IOException e) {
+            done.completeExceptionally(new UncheckedIOException("Unable to flush " + store, e));
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    /** Blocks until the publisher is done. Errors from the publisher or the store are thrown here. */
+    public void await() {
+        try {
+            done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Publisher failed", e.getCause());
+        }
+    }
+}
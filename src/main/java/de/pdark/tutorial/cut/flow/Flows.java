@@ -0,0 +1,49 @@
+package de.pdark.tutorial.cut.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/** Connects the Flow classes with each other and with the Supplier and Consumer based code. */
+public class Flows {
+
+    /**
+     * Same result as GoodCode.streaming(fetch, store).doSomethingUseful() but with demand between
+     * the stages. Returns when all orders have been stored.
+     */
+    public static void run(Flow.Publisher<User> fetch, ConsumerSubscriber<Order> store) {
+        run(fetch, GoodCode.VALID_ORDER, store);
+    }
+
+    /** Like run(fetch, store) but with a different validator, see GoodCode.validator() */
+    public static void run(Flow.Publisher<User> fetch, Predicate<User> validator, ConsumerSubscriber<Order> store) {
+        var processor = new ValidOrderProcessor(validator);
+        processor.subscribe(store);
+        fetch.subscribe(processor);
+        store.await();
+    }
+
+    /**
+     * For code like GoodCode which wants a Supplier<List<User>>. get() waits for all items. They
+     * are requested in batches of ConsumerSubscriber.DEFAULT_BATCH_SIZE, so the publisher never
+     * has to buffer more than that.
+     */
+    public static <T> Supplier<List<T>> toSupplier(Flow.Publisher<T> publisher) {
+        return () -> {
+            var items = new ArrayList<T>();
+            var subscriber = new ConsumerSubscriber<T>(items::add);
+            publisher.subscribe(subscriber);
+            subscriber.await();
+            return items;
+        };
+    }
+    
+    private Flows() {
+    }
+}
@@ -0,0 +1,123 @@
+package de.pdark.tutorial.cut.flow;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Publishes the items of a stream, for example new StreamPublisher<>(new StreamUsers(dataSource)).
+ * Items are only taken from the stream when the subscriber asked for them with request(n), so
+ * a slow subscriber throttles the reader. Nothing is buffered.
+ * 
+ * The items are sent on the thread which calls request(). Each subscriber gets its own stream.
+ * The stream is closed on completion, on errors and on cancel().
+ */
+public class StreamPublisher<T> implements Flow.Publisher<T> {
+
+    private final Supplier<Stream<T>> source;
+
+    public StreamPublisher(Supplier<Stream<T>> source) {
+        this.source = source;
+    }
+
+    /** For suppliers like FetchUsers */
+    public static <T> StreamPublisher<T> ofList(Supplier<List<T>> source) {
+        return new StreamPublisher<>(() -> source.get().stream());
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new StreamSubscription<>(source, subscriber));
+    }
+
+    private static class StreamSubscription<T> implements Flow.Subscription {
+        private final Supplier<Stream<T>> source;
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        /** Makes sure only one thread sends items and that request() from onNext() doesn't recurse */
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private boolean done;
+        private Stream<T> stream;
+        private Iterator<T> items;
+
+        StreamSubscription(Supplier<Stream<T>> source, Flow.Subscriber<? super T> subscriber) {
+            this.source = source;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("request() needs a positive number but was " + n));
+                return;
+            }
+            
+            demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain(); // Closes the stream unless another thread is sending right now; that one will close it
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            
+            do {
+                send();
+            } while (wip.decrementAndGet() != 0);
+        }
+
+        private void send() {
+            if (done) {
+                return;
+            }
+            
+            try {
+                while (!cancelled && demand.get() > 0) {
+                    if (items == null) {
+                        stream = source.get();
+                        items = stream.iterator();
+                    }
+                    
+                    if (!items.hasNext()) {
+                        close();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    
+                    var item = items.next();
+                    demand.decrementAndGet();
+                    subscriber.onNext(item);
+                }
+            } catch (RuntimeException e) {
+                close();
+                subscriber.onError(e);
+                return;
+            }
+            
+            if (cancelled) {
+                close();
+            }
+        }
+
+        private void close() {
+            done = true;
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+}
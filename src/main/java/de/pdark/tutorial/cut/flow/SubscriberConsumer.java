@@ -0,0 +1,124 @@
+package de.pdark.tutorial.cut.flow;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * For code like GoodCode which wants a Consumer: accept() passes each item to the subscriber.
+ * When the subscriber hasn't asked for more, accept() blocks until it does. close() tells the
+ * subscriber that there are no more items.
+ * 
+ * All signals go to the subscriber from the thread which calls accept() and close(), so they
+ * never overlap (Reactive Streams rule 1.3). That includes the error for an invalid request(): it
+ * cancels the subscription and the next accept() or close() passes the error on.
+ */
+public class SubscriberConsumer<T> implements Consumer<T>, AutoCloseable {
+
+    private final Flow.Subscriber<? super T> subscriber;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition demandChanged = lock.newCondition();
+    private long demand;
+    private boolean cancelled;
+    /** Not passed to the subscriber yet */
+    private Throwable error;
+    private boolean closed;
+
+    public SubscriberConsumer(Flow.Subscriber<? super T> subscriber) {
+        this.subscriber = subscriber;
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                lock.lock();
+                try {
+                    if (n <= 0) {
+                        if (!cancelled) {
+                            error = new IllegalArgumentException("request() needs a positive number but was " + n);
+                        }
+                        cancelled = true;
+                        demandChanged.signalAll();
+                        return;
+                    }
+                    
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    demandChanged.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                lock.lock();
+                try {
+                    cancelled = true;
+                    demandChanged.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void accept(T item) {
+        boolean cancel;
+        lock.lock();
+        try {
+            while (demand == 0 && !cancelled) {
+                demandChanged.awaitUninterruptibly();
+            }
+            cancel = cancelled;
+            if (!cancel) {
+                demand --;
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        if (cancel) {
+            var error = signalError();
+            throw new IllegalStateException("Subscriber cancelled the subscription: " + subscriber, error);
+        }
+        subscriber.onNext(item);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        
+        closed = true;
+        if (signalError() == null && !isCancelled()) {
+            subscriber.onComplete();
+        }
+    }
+
+    private boolean isCancelled() {
+        lock.lock();
+        try {
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Passes a pending error to the subscriber, at most once. Returns it or null. */
+    private Throwable signalError() {
+        Throwable result;
+        lock.lock();
+        try {
+            result = error;
+            error = null;
+        } finally {
+            lock.unlock();
+        }
+        
+        if (result != null) {
+            subscriber.onError(result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,128 @@
+package de.pdark.tutorial.cut.flow;
+
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
+
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * The middle of the chain: creates an Order for every user which passes the validator
+ * (GoodCode.VALID_ORDER by default).
+ * 
+ * Demand is passed upstream as it is. For each rejected user, one more user is requested, so
+ * the downstream gets what it asked for. Only one subscriber is supported.
+ */
+public class ValidOrderProcessor implements Flow.Processor<User, Order> {
+
+    private final Predicate<User> validator;
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super Order> downstream;
+    /** Demand from downstream before upstream was connected */
+    private long pending;
+    private boolean cancelled;
+
+    public ValidOrderProcessor() {
+        this(GoodCode.VALID_ORDER);
+    }
+
+    public ValidOrderProcessor(Predicate<User> validator) {
+        this.validator = Objects.requireNonNull(validator, "validator");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Order> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        synchronized (this) {
+            if (downstream != null) {
+                subscriber.onSubscribe(new NoSubscription());
+                subscriber.onError(new IllegalStateException("Only one subscriber is supported"));
+                return;
+            }
+            downstream = subscriber;
+        }
+        
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                Flow.Subscription subscription;
+                synchronized (ValidOrderProcessor.this) {
+                    subscription = upstream;
+                    if (subscription == null) {
+                        pending = n <= 0 ? n : pending + n;
+                        return;
+                    }
+                }
+                subscription.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                Flow.Subscription subscription;
+                synchronized (ValidOrderProcessor.this) {
+                    cancelled = true;
+                    subscription = upstream;
+                }
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long demand;
+        boolean cancel;
+        synchronized (this) {
+            if (upstream != null) {
+                subscription.cancel(); // Only one upstream is allowed
+                return;
+            }
+            upstream = subscription;
+            demand = pending;
+            cancel = cancelled;
+            pending = 0;
+        }
+        
+        if (cancel) {
+            subscription.cancel();
+        } else if (demand != 0) {
+            subscription.request(demand);
+        }
+    }
+
+    @Override
+    public void onNext(User user) {
+        if (!validator.test(user)) {
+            upstream.request(1);
+            return;
+        }
+        
+        var order = new Order();
+        order.setUser(user);
+        downstream.onNext(order);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        downstream.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        downstream.onComplete();
+    }
+
+    private static class NoSubscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
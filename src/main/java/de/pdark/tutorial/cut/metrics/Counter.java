@@ -0,0 +1,12 @@
+package de.pdark.tutorial.cut.metrics;
+
+public interface Counter {
+
+    void add(long delta);
+    
+    default void increment() {
+        add(1);
+    }
+    
+    Counter NOOP = delta -> {};
+}
@@ -0,0 +1,57 @@
+package de.pdark.tutorial.cut.metrics;
+
+/** Names of the counters and timers which the pipeline reports. */
+public class MetricNames {
+    
+    /** Timer: Duration of a whole FetchUsers.get() */
+    public static final String FETCH = "fetch";
+    /** Timer: Round trip of the query which reads the users */
+    public static final String SQL_QUERY = "sql.query";
+    /** Counter: Rows read from the users table */
+    public static final String USERS_FETCHED = "users.fetched";
+    /** Counter: Errors while reading users */
+    public static final String FETCH_ERRORS = "fetch.errors";
+    
+    /** Timer: GoodCode.VALID_ORDER for one user */
+    public static final String VALIDATE = "validate";
+    /** Counter: Users which passed GoodCode.VALID_ORDER */
+    public static final String USERS_ACCEPTED = "users.accepted";
+    /** Counter: Users which GoodCode.VALID_ORDER rejected */
+    public static final String USERS_REJECTED = "users.rejected";
+    
+    /** Timer: Round trip of one INSERT or one batch of INSERTs */
+    public static final String SQL_INSERT = "sql.insert";
+    /** Counter: Rows written to the orders table */
+    public static final String ORDERS_STORED = "orders.stored";
+    /** Counter: Orders which couldn't be written */
+    public static final String STORE_ERRORS = "store.errors";
+    /** Counter: Orders which DedupSaveOrder didn't write because they were already there */
+    public static final String ORDERS_DUPLICATE = "orders.duplicate";
+    /** Counter: Orders which SpillingOrderBuffer wrote to its temporary file */
+    public static final String ORDERS_SPILLED = "orders.spilled";
+    
+    /** Timer: Duration of one COMMIT in TransactionalSaveOrder */
+    public static final String SQL_COMMIT = "sql.commit";
+    /** Counter: Chunks of orders which were committed */
+    public static final String CHUNKS_COMMITTED = "chunks.committed";
+    /** Counter: Chunks which were rolled back and sent again */
+    public static final String CHUNKS_RETRIED = "chunks.retried";
+    
+    /** Counter: Unchanged users which ValidationCache knew from an earlier run */
+    public static final String CACHE_HITS = "cache.hits";
+    /** Counter: New or changed users which had to be validated again */
+    public static final String CACHE_MISSES = "cache.misses";
+    /** Counter: Entries which ValidationCache dropped because it was full */
+    public static final String CACHE_EVICTIONS = "cache.evictions";
+    
+    /** Counter: Names which MemoizingValidator had already seen */
+    public static final String MEMO_HITS = "memo.hits";
+    /** Counter: Names which MemoizingValidator had to pass to the rules */
+    public static final String MEMO_MISSES = "memo.misses";
+    /** Counter: Names which MemoizingValidator dropped because their slots were full */
+    public static final String MEMO_EVICTIONS = "memo.evictions";
+    
+    private MetricNames() {
+        // Only constants
+    }
+}
@@ -0,0 +1,32 @@
+package de.pdark.tutorial.cut.metrics;
+
+/**
+ * Where the pipeline reports what it's doing. Look up the counters and timers once and keep them
+ * in a field; the hot path should only call increment() or record().
+ * 
+ * The default is NOOP which costs next to nothing. Use SimpleMetricsRegistry or write an adapter
+ * for your monitoring system.
+ */
+public interface MetricsRegistry {
+
+    Counter counter(String name);
+    
+    Timer timer(String name);
+    
+    MetricsRegistry NOOP = new MetricsRegistry() {
+        @Override
+        public Counter counter(String name) {
+            return Counter.NOOP;
+        }
+        
+        @Override
+        public Timer timer(String name) {
+            return Timer.NOOP;
+        }
+        
+        @Override
+        public String toString() {
+            return "MetricsRegistry.NOOP";
+        }
+    };
+}
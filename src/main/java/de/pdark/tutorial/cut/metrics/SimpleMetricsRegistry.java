@@ -0,0 +1,110 @@
+package de.pdark.tutorial.cut.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/** Keeps the numbers in memory. Good enough for tests, log output and simple dashboards. */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private Map<String, SimpleCounter> counters = new ConcurrentHashMap<>();
+    private Map<String, SimpleTimer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public SimpleCounter counter(String name) {
+        return counters.computeIfAbsent(name, it -> new SimpleCounter());
+    }
+
+    @Override
+    public SimpleTimer timer(String name) {
+        return timers.computeIfAbsent(name, it -> new SimpleTimer());
+    }
+    
+    /** One line per counter or timer, sorted by name. */
+    @Override
+    public String toString() {
+        var all = new TreeMap<String, Object>();
+        all.putAll(counters);
+        all.putAll(timers);
+        return all.entrySet().stream()
+                .map(it -> it.getKey() + ": " + it.getValue())
+                .collect(Collectors.joining("\n"));
+    }
+    
+    public static class SimpleCounter implements Counter {
+        private LongAdder value = new LongAdder();
+        
+        @Override
+        public void add(long delta) {
+            value.add(delta);
+        }
+        
+        public long getValue() {
+            return value.sum();
+        }
+        
+        @Override
+        public String toString() {
+            return String.valueOf(getValue());
+        }
+    }
+
+    /**
+     * Counts, sums and puts the durations into a histogram. Bucket i contains durations
+     * between 2^(i-1) and 2^i nanoseconds, so percentiles are accurate up to a factor of 2.
+     */
+    public static class SimpleTimer implements Timer {
+        private LongAdder count = new LongAdder();
+        private LongAdder total = new LongAdder();
+        private LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private AtomicLongArray buckets = new AtomicLongArray(Long.SIZE + 1);
+        
+        @Override
+        public void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            count.increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+            buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+        }
+        
+        public long getCount() {
+            return count.sum();
+        }
+        
+        public long getTotalNanos() {
+            return total.sum();
+        }
+        
+        public long getMaxNanos() {
+            return max.get();
+        }
+        
+        /** Upper bound of the bucket which contains the given percentile (0 ... 100). */
+        public long percentileNanos(double percentile) {
+            long limit = (long) Math.ceil(getCount() * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= limit && seen > 0) {
+                    return i == 0 ? 0 : Math.min(getMaxNanos(), (1L << i) - 1);
+                }
+            }
+            return getMaxNanos();
+        }
+        
+        @Override
+        public String toString() {
+            return "count=" + getCount()
+                + ", total=" + TimeUnit.NANOSECONDS.toMillis(getTotalNanos()) + "ms"
+                + ", p50=" + percentileNanos(50) + "ns"
+                + ", p99=" + percentileNanos(99) + "ns"
+                + ", max=" + getMaxNanos() + "ns";
+        }
+    }
+}
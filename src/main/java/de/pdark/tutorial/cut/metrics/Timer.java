@@ -0,0 +1,37 @@
+package de.pdark.tutorial.cut.metrics;
+
+/**
+ * Usage:
+ * 
+ *     long start = timer.start();
+ *     ...
+ *     timer.stop(start);
+ */
+public interface Timer {
+
+    default long start() {
+        return System.nanoTime();
+    }
+    
+    default void stop(long start) {
+        record(System.nanoTime() - start);
+    }
+    
+    void record(long nanos);
+    
+    /** Doesn't even ask the clock. */
+    Timer NOOP = new Timer() {
+        @Override
+        public long start() {
+            return 0;
+        }
+        
+        @Override
+        public void stop(long start) {
+        }
+        
+        @Override
+        public void record(long nanos) {
+        }
+    };
+}
@@ -0,0 +1,52 @@
+package de.pdark.tutorial.cut.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Returns the same String instance for equal names, so repeated names are only kept once in
+ * memory. Unlike String.intern(), the pool is private and goes away with its owner.
+ * 
+ * The pool stops growing when it reaches maxSize. Names after that are returned as they are.
+ * That keeps the pool from becoming a memory leak when almost all names are unique.
+ */
+public class NamePool {
+
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public NamePool() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public NamePool(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive but was " + maxSize);
+        }
+        
+        this.maxSize = maxSize;
+    }
+
+    public String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        
+        var existing = names.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        
+        if (names.size() >= maxSize) {
+            return name;
+        }
+        
+        existing = names.putIfAbsent(name, name);
+        return existing == null ? name : existing;
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
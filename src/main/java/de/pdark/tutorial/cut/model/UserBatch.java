@@ -0,0 +1,67 @@
+package de.pdark.tutorial.cut.model;
+
+import java.util.Arrays;
+
+/**
+ * Many users in one array instead of one User per row: name(i) is the name of row i. The Strings
+ * come straight from the JDBC driver and go straight back into the INSERT, so they are never
+ * copied or encoded.
+ * 
+ * A batch can be cleared and filled again, so a bulk run needs the same array for any number of
+ * users.
+ */
+public class UserBatch {
+
+    private final String[] names;
+    private int size;
+
+    public UserBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive but was " + capacity);
+        }
+        
+        this.names = new String[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == names.length;
+    }
+
+    /** Drops the references, so the names of the last batch can be garbage collected. */
+    public void clear() {
+        Arrays.fill(names, 0, size, null);
+        size = 0;
+    }
+
+    public void add(String name) {
+        if (isFull()) {
+            throw new IllegalStateException("Batch is full: " + names.length);
+        }
+        
+        names[size ++] = name;
+    }
+
+    public boolean isNull(int row) {
+        return name(row) == null;
+    }
+
+    public String name(int row) {
+        if (row >= size) {
+            throw new IndexOutOfBoundsException("row " + row + " but size is " + size);
+        }
+        return names[row];
+    }
+
+    @Override
+    public String toString() {
+        var result = new StringBuilder(getClass().getSimpleName()).append("(size=").append(size);
+        for (int i = 0; i < size; i++) {
+            result.append(i == 0 ? ", names=" : ",").append(names[i]);
+        }
+        return result.append(")").toString();
+    }
+}
@@ -0,0 +1,34 @@
+package de.pdark.tutorial.cut.rules;
+
+import java.util.function.Predicate;
+
+/**
+ * A named check in a RuleSet. test() returns false to reject the value.
+ * 
+ * The RuleSet may change the order of its rules at any time, so a rule must not rely on other
+ * rules being checked before it. For example, every rule must handle a missing name itself.
+ */
+public class Rule<T> implements Predicate<T> {
+
+    private final String name;
+    private final Predicate<T> check;
+
+    public Rule(String name, Predicate<T> check) {
+        this.name = name;
+        this.check = check;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean test(T value) {
+        return check.test(value);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
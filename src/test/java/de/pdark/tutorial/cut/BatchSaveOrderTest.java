@@ -0,0 +1,119 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+class BatchSaveOrderTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table orders (user_name varchar(256) not null)");
+    TestDataFactory testData = new TestDataFactory();
+
+    /** Same input and output as SaveOrderTest.validOrder(). */
+    @Test
+    void validOrder() {
+        var connection = database.connect();
+
+        try (var tool = new BatchSaveOrder(connection)) {
+            tool.accept(testData.orders.valid());
+        }
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+    }
+    
+    @Test
+    void nothingBeforeBatchIsFull() {
+        var connection = database.connect();
+
+        try (var tool = new BatchSaveOrder(connection, 2)) {
+            tool.accept(testData.orders.valid());
+            
+            database.assertTableContent(
+                    """
+                    select * from orders:
+                    USER_NAME
+                    *no data*
+                    """,
+                    "orders");
+            
+            tool.accept(testData.orders.valid2());
+            
+            database.assertTableContent(
+                    """
+                    select * from orders:
+                    USER_NAME
+                    valid
+                    valid2
+                    """,
+                    "orders");
+        }
+    }
+    
+    @Test
+    void errorNamesFailedOrder() {
+        var connection = database.connect();
+
+        var metrics = new SimpleMetricsRegistry();
+        var tool = new BatchSaveOrder(connection, 3).metrics(metrics);
+        tool.accept(testData.orders.valid());
+        tool.accept(orderWithoutName());
+        
+        var e = assertThrows(IllegalStateException.class, tool::close);
+        assertEquals(
+                """
+                Unable to store 1 of 2 orders in database
+                sql: insert into orders(user_name) values (?)
+                 order #1: Order(user=User(name=null))""",
+                e.getMessage());
+        
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_STORED).getValue());
+        assertEquals(1, metrics.counter(MetricNames.STORE_ERRORS).getValue());
+        assertEquals(1, metrics.timer(MetricNames.SQL_INSERT).getCount());
+    }
+    
+    @Test
+    void continueAfterError() {
+        var connection = database.connect();
+
+        try (var tool = new BatchSaveOrder(connection, 1)) {
+            assertThrows(IllegalStateException.class, () -> tool.accept(orderWithoutName()));
+            tool.accept(testData.orders.valid());
+        }
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+    }
+    
+    @Test
+    void invalidBatchSize() {
+        var connection = database.connect();
+        var e = assertThrows(IllegalArgumentException.class, () -> new BatchSaveOrder(connection, 0));
+        assertEquals("batchSize must be positive but was 0", e.getMessage());
+    }
+
+    private Order orderWithoutName() {
+        var result = new Order();
+        result.setUser(new User());
+        return result;
+    }
+}
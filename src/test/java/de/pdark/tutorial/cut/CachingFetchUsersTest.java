@@ -0,0 +1,127 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+
+class CachingFetchUsersTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256), version int)")
+        .prepare("insert into users (name, version) values (?, 1)", "valid")
+        .prepare("insert into users (name, version) values (?, 1)", "a b");
+    SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+
+    @Test
+    void unchangedUsersAreSkipped() throws SQLException {
+        var cache = new ValidationCache().metrics(metrics);
+        var tool = new CachingFetchUsers(database.connect(), "version", cache);
+        
+        assertEquals("name=valid\nname=a b", UserTestUtils.toString(tool.get()));
+        tool.commit();
+        
+        assertEquals("", UserTestUtils.toString(tool.get()));
+        
+        database.connect().createStatement().execute("update users set version = 2 where name = 'a b'");
+        assertEquals("name=a b", UserTestUtils.toString(tool.get()));
+        
+        assertEquals(3, metrics.counter(MetricNames.CACHE_HITS).getValue());
+        assertEquals(3, metrics.counter(MetricNames.CACHE_MISSES).getValue());
+    }
+    
+    /** A failed run must be repeated */
+    @Test
+    void noCommit() {
+        var tool = new CachingFetchUsers(database.connect(), "version", new ValidationCache());
+        
+        assertEquals("name=valid\nname=a b", UserTestUtils.toString(tool.get()));
+        tool.rollback();
+        
+        assertEquals("name=valid\nname=a b", UserTestUtils.toString(tool.get()));
+    }
+    
+    /** A run which ended without commit() or rollback() is repeated, only the second run counts */
+    @Test
+    void twoRuns() throws SQLException {
+        var cache = new ValidationCache();
+        var connection = database.connect();
+        var tool = new CachingFetchUsers(connection, "version", cache);
+        
+        tool.get();
+        tool.get();
+        tool.rollback();
+        tool.commit();
+        assertEquals(0, cache.size());
+        
+        assertEquals("name=valid\nname=a b", UserTestUtils.toString(tool.get()));
+        try (var stmt = connection.createStatement()) {
+            stmt.execute("delete from users where name = 'a b'");
+        }
+        assertEquals("name=valid", UserTestUtils.toString(tool.get()));
+        tool.commit();
+        assertEquals(1, cache.size());
+    }
+    
+    /** Users with the same name are different users */
+    @Test
+    void sameName() throws SQLException {
+        var connection = database
+                .prepare("insert into users (name, version) values (?, 1)", "valid")
+                .connect();
+        var tool = new CachingFetchUsers(connection, "version", new ValidationCache());
+        tool.get();
+        tool.commit();
+        
+        connection.createStatement().execute("update users set version = 2 where _rowid_ = 3");
+        assertEquals("name=valid", UserTestUtils.toString(tool.get()));
+    }
+    
+    /** Invalid users are returned as well, GoodCode's validator decides */
+    @Test
+    void validatorOfTheRun() {
+        var cache = new ValidationCache();
+        var orders = new ArrayList<String>();
+        var tool = new CachingFetchUsers(database.connect(), "version", cache);
+        
+        new GoodCode(tool, it -> orders.add(it.getUser().getName())).validator(user -> true).doSomethingUseful();
+        tool.commit();
+        
+        assertEquals("[valid, a b]", orders.toString());
+        assertEquals(2, cache.size());
+    }
+    
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        var cache = new ValidationCache(1).metrics(metrics);
+        var tool = new CachingFetchUsers(database.connect(), "version", cache);
+        
+        tool.get();
+        tool.commit();
+        
+        assertEquals(1, cache.size());
+        assertEquals(1, metrics.counter(MetricNames.CACHE_EVICTIONS).getValue());
+        assertEquals("name=valid", UserTestUtils.toString(tool.get()));
+    }
+    
+    @Test
+    void invalidate() {
+        var cache = new ValidationCache();
+        var tool = new CachingFetchUsers(database.connect(), "version", cache);
+        tool.get();
+        tool.commit();
+        
+        cache.invalidate(1L); // _rowid_ of "valid"
+        assertEquals("name=valid", UserTestUtils.toString(tool.get()));
+        
+        cache.invalidateAll();
+        assertEquals("name=valid\nname=a b", UserTestUtils.toString(tool.get()));
+    }
+}
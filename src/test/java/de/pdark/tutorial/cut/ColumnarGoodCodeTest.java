@@ -0,0 +1,105 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.UserBatch;
+
+class ColumnarGoodCodeTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))")
+        .prepare("create table orders (user_name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+
+    /** Same input as FetchUsersTest.severalUsers(), same output as SaveOrderTest.validOrder() */
+    @Test
+    void validOrder() {
+        var connection = database
+                .prepare("insert into users (name) values (?)", testData.users.valid().getName())
+                .prepare("insert into users (name) values (?)", testData.users.nameWithSpace().getName())
+                .prepare("insert into users (name) values (null)")
+                .connect();
+        
+        var metrics = new SimpleMetricsRegistry();
+        try (var store = new BatchSaveOrder(connection)) {
+            new ColumnarGoodCode(new FetchUserBatches(connection, 2), store::accept).metrics(metrics).doSomethingUseful();
+        }
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+        assertEquals(1, metrics.counter(MetricNames.USERS_ACCEPTED).getValue());
+        assertEquals(2, metrics.counter(MetricNames.USERS_REJECTED).getValue());
+        assertEquals(2, metrics.timer(MetricNames.VALIDATE).getCount());
+    }
+    
+    /** The stream reuses the batch, so we have to copy the content */
+    @Test
+    void batches() {
+        var connection = database
+                .prepareRows("insert into users (name) values (?)", 5, i -> new Object[] { "user" + i })
+                .connect();
+        
+        var batches = new ArrayList<String>();
+        try (var stream = new FetchUserBatches(connection, 2).get()) {
+            stream.forEach(it -> batches.add(it.toString()));
+        }
+        
+        assertEquals(
+                """
+                UserBatch(size=2, names=user0,user1)
+                UserBatch(size=2, names=user2,user3)
+                UserBatch(size=1, names=user4)""",
+                String.join("\n", batches));
+    }
+    
+    /** Validation of a batch must agree with GoodCode.isValidName() */
+    @Test
+    void parityWithRandomNames() {
+        var alphabet = new String[] { " ", "\t", "\n", "\u0000", "\u001f", "!", "a", "\u007f", " ", "ä", "€", "　", "😀", "\ud800" };
+        var random = new Random(42); // Fixed seed, so failures can be reproduced
+        
+        var batch = new UserBatch(1000);
+        var selection = new BitSet();
+        for (int round = 0; round < 5; round++) {
+            batch.clear();
+            var expected = new StringBuilder();
+            var names = new String[1000];
+            for (int row = 0; row < names.length; row++) {
+                var name = new StringBuilder();
+                var length = random.nextInt(6);
+                for (int j = 0; j < length; j++) {
+                    name.append(alphabet[random.nextInt(alphabet.length)]);
+                }
+                names[row] = row % 100 == 0 ? null : name.toString();
+                batch.add(names[row]);
+                
+                expected.append(row).append(": ").append(GoodCode.isValidName(names[row])).append("\n");
+            }
+            
+            GoodCode.validate(batch, selection);
+            
+            var actual = new StringBuilder();
+            for (int row = 0; row < names.length; row++) {
+                actual.append(row).append(": ").append(selection.get(row)).append("\n");
+                assertSame(names[row], batch.name(row), "row " + row);
+            }
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+}
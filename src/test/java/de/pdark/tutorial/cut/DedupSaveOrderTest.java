@@ -0,0 +1,178 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+
+class DedupSaveOrderTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table orders (user_name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+
+    /** Running GoodCode twice over the same users must not create duplicates */
+    @Test
+    void secondRun() {
+        var connection = database.connect();
+        var users = List.of(testData.users.valid(), testData.users.valid2());
+        var metrics = new SimpleMetricsRegistry();
+        
+        for (int run = 0; run < 2; run++) {
+            try (var store = new DedupSaveOrder(connection, new BatchSaveOrder(connection)).metrics(metrics)) {
+                new GoodCode(() -> users, store).doSomethingUseful();
+            }
+        }
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                valid2
+                """,
+                "orders");
+        assertEquals(2, metrics.counter(MetricNames.ORDERS_DUPLICATE).getValue());
+    }
+    
+    @Test
+    void sameRun() {
+        var connection = database.connect();
+        var metrics = new SimpleMetricsRegistry();
+        
+        var store = new DedupSaveOrder(connection, new SaveOrder(connection)).metrics(metrics);
+        store.accept(testData.orders.valid());
+        store.accept(testData.orders.valid());
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_DUPLICATE).getValue());
+    }
+    
+    /** An order which couldn't be stored isn't a duplicate when we try again */
+    @Test
+    void storeFails() {
+        var connection = database.connect();
+        var fail = new boolean[] { true };
+        var store = new DedupSaveOrder(connection, order -> {
+            if (fail[0]) {
+                throw new IllegalStateException("Disk full");
+            }
+            new SaveOrder(connection).accept(order);
+        });
+        
+        assertThrows(IllegalStateException.class, () -> store.accept(testData.orders.valid()));
+        fail[0] = false;
+        store.accept(testData.orders.valid());
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+    }
+    
+    /** Orders of a rolled back transaction aren't duplicates */
+    @Test
+    void rollback() throws SQLException {
+        var connection = database.connect();
+        connection.setAutoCommit(false);
+        var metrics = new SimpleMetricsRegistry();
+        var store = new DedupSaveOrder(connection, new BatchSaveOrder(connection)).metrics(metrics);
+        
+        store.accept(testData.orders.valid());
+        store.flush();
+        connection.rollback();
+        store.rolledBack();
+        
+        store.accept(testData.orders.valid());
+        store.flush();
+        connection.commit();
+        store.committed();
+        
+        store.accept(testData.orders.valid());
+        store.close();
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_DUPLICATE).getValue());
+    }
+    
+    /** The first INSERT of the batch worked, the second didn't. Only the second one can be sent again. */
+    @Test
+    void flushFails() throws SQLException {
+        var connection = database.connect();
+        try (var stmt = connection.createStatement()) {
+            stmt.execute("alter table orders alter column user_name varchar(5)");
+        }
+        var metrics = new SimpleMetricsRegistry();
+        var store = new DedupSaveOrder(connection, new BatchSaveOrder(connection)).metrics(metrics);
+        
+        store.accept(testData.orders.valid());
+        store.accept(testData.orders.valid2());
+        assertThrows(IllegalStateException.class, store::flush);
+        
+        store.accept(testData.orders.valid());
+        store.close();
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_DUPLICATE).getValue());
+    }
+    
+    /**
+     * BatchSaveOrder sends a full batch in accept(). After the caller rolled back the failed batch,
+     * the other order of the batch can be sent again.
+     */
+    @Test
+    void batchFailsInAccept() throws SQLException {
+        var connection = database.connect();
+        try (var stmt = connection.createStatement()) {
+            stmt.execute("alter table orders alter column user_name varchar(5)");
+        }
+        connection.setAutoCommit(false);
+        var store = new DedupSaveOrder(connection, new BatchSaveOrder(connection, 2));
+        
+        store.accept(testData.orders.valid());
+        assertThrows(IllegalStateException.class, () -> store.accept(testData.orders.valid2()));
+        connection.rollback();
+        
+        store.accept(testData.orders.valid());
+        store.flush();
+        connection.commit();
+        store.close();
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+    }
+}
@@ -12,6 +12,9 @@ import org.junit.jupiter.api.extension.RegisterExtension;
 
 import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
 import de.pdark.tutorial.cut.database.PreparePreparedStatement;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.NamePool;
 import de.pdark.tutorial.cut.model.User;
 
 class FetchUsersTest {
@@ -78,6 +81,87 @@ class FetchUsersTest {
         );
     }
 
+    /** Production-like volume. Seeding takes well below a second thanks to JDBC batches. */
+    @Test
+    void manyUsers() {
+        var connection = database
+                .prepareRows("insert into users (name) values (?)", 100_000, i -> new Object[] { "user" + i })
+                .connect();
+        
+        var users = new FetchUsers(connection).get();
+        assertEquals(100_000, users.size());
+        assertEquals("name=user99999", UserTestUtils.toString(users.get(users.size() - 1)));
+    }
+    
+    @Test
+    void csv() {
+        var connection = database
+                .prepareCsv("users", "classpath:/users.csv")
+                .connect();
+        
+        assertUsers(
+                Arrays.asList(testData.users.valid(), testData.users.nameWithSpace()),
+                connection
+        );
+    }
+    
+    /** Other columns are neither transferred nor mapped */
+    @Test
+    void onlyMappedColumns() {
+        var connection = database
+                .prepare("alter table users add column password varchar(256) before name")
+                .prepare("insert into users (password, name) values ('secret', ?)", testData.users.valid().getName())
+                .connect();
+        
+        assertEquals(
+                "select * from users:\nNAME\nvalid",
+                database.dumpQuery("select * from users", UserMapper.INSTANCE));
+        assertUsers(Arrays.asList(testData.users.valid()), connection);
+    }
+    
+    /** Both rows share the same name instance */
+    @Test
+    void namePool() {
+        var connection = database
+                .prepare(insertUser(testData.users.valid()))
+                .prepare(insertUser(testData.users.valid()))
+                .connect();
+        
+        var users = new FetchUsers(connection).namePool(new NamePool()).get();
+        
+        assertEquals("[User(name=valid), User(name=valid)]", users.toString());
+        assertSame(users.get(0).getName(), users.get(1).getName());
+    }
+    
+    /** Same as singleUser() but with a connection from a pool */
+    @Test
+    void pooled() {
+        User valid = testData.users.valid();
+        var dataSource = database
+                .prepare(insertUser(valid))
+                .dataSource();
+        
+        var tool = new FetchUsers(dataSource);
+        assertEquals(UserTestUtils.toString(valid), UserTestUtils.toString(tool.get()));
+        assertEquals(0, dataSource.getActiveCount(), "Connection wasn't returned");
+    }
+
+    @Test
+    void metrics() {
+        var connection = database
+                .prepare(insertUser(testData.users.valid()))
+                .prepare(insertUser(testData.users.nameWithSpace()))
+                .connect();
+        
+        var metrics = new SimpleMetricsRegistry();
+        new FetchUsers(connection).metrics(metrics).get();
+        
+        assertEquals(2, metrics.counter(MetricNames.USERS_FETCHED).getValue());
+        assertEquals(1, metrics.timer(MetricNames.SQL_QUERY).getCount());
+        assertEquals(1, metrics.timer(MetricNames.FETCH).getCount());
+        assertEquals(0, metrics.counter(MetricNames.FETCH_ERRORS).getValue());
+    }
+
     private PreparePreparedStatement insertUser(User user) {
         return new PreparePreparedStatement("insert into users (name) values (?)", user.getName());
     }
@@ -10,10 +10,13 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
 import de.pdark.tutorial.cut.model.Order;
 import de.pdark.tutorial.cut.model.User;
 
@@ -54,6 +57,13 @@ class GoodCodeTest {
             assertInvalidUserName();
         }
         
+        /** Only the space is forbidden. Other whitespace is fine as long as there is something visible. */
+        @Test
+        void nameWithTab() {
+            user.setName("a\tb");
+            assertValidUserName();
+        }
+        
         @Test
         void success() {
             user = testData.users.valid();
@@ -122,6 +132,34 @@ class GoodCodeTest {
             assertOrders(testData.orders.valid(), testData.orders.valid2());
         }
         
+        @Test
+        void metrics() {
+            var metrics = new SimpleMetricsRegistry();
+            var fetch = users(testData.users.valid(), testData.users.nameWithSpace(), testData.users.valid2());
+            var tool = new GoodCode(fetch, orders::add).metrics(metrics);
+            tool.doSomethingUseful();
+            
+            assertEquals(2, metrics.counter(MetricNames.USERS_ACCEPTED).getValue());
+            assertEquals(1, metrics.counter(MetricNames.USERS_REJECTED).getValue());
+            assertEquals(3, metrics.timer(MetricNames.VALIDATE).getCount());
+        }
+        
+        /** Streaming mode must produce exactly the same orders and close the stream afterwards. */
+        @Test
+        void streaming() {
+            user = testData.users.valid();
+            var user2 = testData.users.valid2();
+            var closed = new boolean[1];
+            Supplier<Stream<User>> fetch = () -> Stream.of(user, testData.users.nameWithSpace(), user2)
+                    .onClose(() -> closed[0] = true);
+            
+            var tool = GoodCode.streaming(fetch, orders::add);
+            tool.doSomethingUseful();
+            
+            assertOrders(testData.orders.valid(), testData.orders.valid2());
+            assertTrue(closed[0], "Stream wasn't closed");
+        }
+        
         /**
          * Assert that the result is correct.
          * 
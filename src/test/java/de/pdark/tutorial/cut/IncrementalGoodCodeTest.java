@@ -0,0 +1,142 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.model.Order;
+
+class IncrementalGoodCodeTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))")
+        .prepare("create table orders (user_name varchar(256) not null)")
+        .prepare("insert into users (name) values ('a b')")
+        .prepareRows("insert into users (name) values (?)", 10, i -> new Object[] { "user" + i });
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void completeRun() {
+        var connection = database.connect();
+        var checkpoint = new FileCheckpoint(tempDir.resolve("checkpoint"));
+        
+        try (var store = new BatchSaveOrder(connection)) {
+            create(connection, store, checkpoint).doSomethingUseful();
+        }
+        
+        assertNull(checkpoint.load());
+        assertOrders("user0", "user1", "user2", "user3", "user4", "user5", "user6", "user7", "user8", "user9");
+    }
+    
+    /** The nightly run fails in the third chunk. The next run must continue there. */
+    @Test
+    void resumeAfterFailure() throws SQLException {
+        var connection = database.connect();
+        var checkpoint = new FileCheckpoint(tempDir.resolve("checkpoint"));
+        
+        try (var store = new BatchSaveOrder(connection, 1)) {
+            Consumer<Order> failing = order -> {
+                if ("user5".equals(order.getUser().getName())) {
+                    throw new IllegalStateException("Disk full");
+                }
+                store.accept(order);
+            };
+            
+            var e = assertThrows(IllegalStateException.class, () -> create(connection, failing, checkpoint).doSomethingUseful());
+            assertEquals("Disk full", e.getMessage());
+        }
+        connection.rollback();
+        
+        // Chunks: [a b, user0, user1], [user2, user3, user4], [user5, ...
+        assertEquals("6:user4", checkpoint.load()); // Row id and name
+        assertOrders("user0", "user1", "user2", "user3", "user4");
+        
+        try (var store = new BatchSaveOrder(connection)) {
+            create(connection, store, checkpoint).doSomethingUseful();
+        }
+        
+        assertNull(checkpoint.load());
+        assertOrders("user0", "user1", "user2", "user3", "user4", "user5", "user6", "user7", "user8", "user9");
+    }
+
+    /** The key is rolled back together with the orders when the commit doesn't happen */
+    @Test
+    void checkpointInSameTransaction() throws SQLException {
+        var connection = database
+                .prepare("create table checkpoints (job varchar(256) primary key, last_key varchar(1024) not null)")
+                .prepareRows("insert into users (name) values (?)", 3, i -> new Object[] { "user1" }) // Same name across chunks
+                .connect();
+        var checkpoint = new TableCheckpoint(connection, "test");
+        var commits = new AtomicInteger();
+        
+        try (var store = new BatchSaveOrder(connection)) {
+            var fetch = new KeysetFetchUsers(connection, 3);
+            var tool = new IncrementalGoodCode(fetch, store, () -> {
+                if (commits.incrementAndGet() == 2) {
+                    throw new IllegalStateException("Crash before commit");
+                }
+                commit(connection);
+            }, checkpoint);
+            
+            var e = assertThrows(IllegalStateException.class, tool::doSomethingUseful);
+            assertEquals("Crash before commit", e.getMessage());
+        }
+        connection.rollback();
+        
+        // Chunks: [a b, user0, user1], [user1, user1, user1], [user2, ...
+        assertEquals("3:user1", checkpoint.load());
+        assertOrders("user0", "user1");
+        
+        try (var store = new BatchSaveOrder(connection)) {
+            create(connection, store, checkpoint).doSomethingUseful();
+        }
+        
+        assertNull(checkpoint.load());
+        assertEquals(
+                """
+                select user_name, count(*) from orders group by user_name order by user_name:
+                USER_NAME,COUNT(*)
+                user0,1
+                user1,4
+                user2,1
+                user3,1
+                user4,1
+                user5,1
+                user6,1
+                user7,1
+                user8,1
+                user9,1""",
+                database.dumpQuery("select user_name, count(*) from orders group by user_name order by user_name"));
+    }
+
+    private IncrementalGoodCode create(Connection connection, Consumer<Order> store, Checkpoint checkpoint) {
+        var fetch = new KeysetFetchUsers(connection, 3);
+        return new IncrementalGoodCode(fetch, store, () -> commit(connection), checkpoint);
+    }
+
+    private void commit(Connection connection) {
+        try {
+            connection.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void assertOrders(String... names) {
+        assertEquals(
+                "select * from orders order by user_name:\nUSER_NAME\n" + String.join("\n", names),
+                database.dumpQuery("select * from orders order by user_name"));
+    }
+}
@@ -0,0 +1,71 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.model.User;
+
+class KeysetFetchUsersTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+
+    @Test
+    void chunks() {
+        var connection = database
+                .prepare("insert into users (name) values (?)", testData.users.valid2().getName())
+                .prepare("insert into users (name) values (?)", testData.users.valid().getName())
+                .prepare("insert into users (name) values (?)", testData.users.nameWithSpace().getName())
+                .prepare("insert into users (name) values (null)")
+                .connect();
+        var tool = new KeysetFetchUsers(connection, 2);
+        
+        assertEquals("name=a b\nname=valid", UserTestUtils.toString(tool.apply(null)));
+        assertEquals("2:valid", tool.lastKey());
+        assertEquals("name=valid2", UserTestUtils.toString(tool.apply(tool.lastKey())));
+        assertEquals("1:valid2", tool.lastKey());
+        assertEquals("", UserTestUtils.toString(tool.apply(tool.lastKey())));
+        assertEquals("1:valid2", tool.lastKey());
+    }
+    
+    /** The same name at the end of one chunk and at the start of the next one */
+    @Test
+    void duplicatesAcrossChunks() {
+        var connection = database
+                .prepareRows("insert into users (name) values (?)", 5, i -> new Object[] { "same" })
+                .prepare("insert into users (name) values ('tail')")
+                .connect();
+        var tool = new KeysetFetchUsers(connection, 2);
+        
+        var all = new ArrayList<User>();
+        String key = null;
+        List<User> chunk;
+        while (!(chunk = tool.apply(key)).isEmpty()) {
+            all.addAll(chunk);
+            key = tool.lastKey();
+        }
+        
+        assertEquals("name=same\nname=same\nname=same\nname=same\nname=same\nname=tail", UserTestUtils.toString(all));
+    }
+    
+    @Test
+    void emptyTable() {
+        var tool = new KeysetFetchUsers(database.connect(), 2);
+        
+        assertEquals("", UserTestUtils.toString(tool.apply(null)));
+    }
+    
+    @Test
+    void invalidChunkSize() {
+        var e = assertThrows(IllegalArgumentException.class, () -> new KeysetFetchUsers(database.connect(), 0));
+        assertEquals("chunkSize must be positive but was 0", e.getMessage());
+    }
+}
@@ -0,0 +1,60 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+
+class LeasedSaveOrderTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table orders (user_name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+
+    /** Same as SaveOrderTest.pooled() but all orders use the same connection */
+    @Test
+    void oneConnectionPerRun() {
+        var dataSource = database.dataSource();
+        var tool = new LeasedSaveOrder(dataSource);
+        
+        tool.accept(testData.orders.valid());
+        tool.accept(testData.orders.valid2());
+        assertEquals(1, dataSource.getActiveCount());
+        
+        tool.close();
+        assertEquals(0, dataSource.getActiveCount(), "Connection wasn't returned");
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                valid2
+                """,
+                "orders");
+    }
+
+    @Test
+    void secondRun() {
+        var dataSource = database.dataSource();
+        var tool = new LeasedSaveOrder(dataSource);
+        
+        tool.accept(testData.orders.valid());
+        tool.close();
+        tool.accept(testData.orders.valid2());
+        tool.close();
+        tool.close(); // Must be harmless
+        
+        assertEquals(0, dataSource.getActiveCount());
+        assertEquals(1, dataSource.getIdleCount());
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                valid2
+                """,
+                "orders");
+    }
+}
@@ -0,0 +1,116 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+class MemoizingValidatorTest {
+    TestDataFactory testData = new TestDataFactory();
+    SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+    AtomicInteger calls = new AtomicInteger();
+    Predicate<User> rules = user -> {
+        calls.incrementAndGet();
+        return GoodCode.VALID_ORDER.test(user);
+    };
+
+    @Test
+    void repeatedNamesSkipTheRules() {
+        var validator = new MemoizingValidator(rules).metrics(metrics);
+        
+        for (int i = 0; i < 3; i++) {
+            assertTrue(validator.test(testData.users.valid()));
+            assertFalse(validator.test(testData.users.nameWithSpace()));
+        }
+        
+        assertEquals(2, calls.get());
+        assertEquals(4, metrics.counter(MetricNames.MEMO_HITS).getValue());
+        assertEquals(2, metrics.counter(MetricNames.MEMO_MISSES).getValue());
+    }
+
+    /** The names usually come from different rows, so they are equal but not the same instance */
+    @Test
+    void equalNames() {
+        var validator = new MemoizingValidator(rules);
+        
+        assertTrue(validator.test(user(new String("abc"))));
+        assertTrue(validator.test(user(new String("abc"))));
+        
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void noName() {
+        var validator = new MemoizingValidator(rules).metrics(metrics);
+        
+        assertFalse(validator.test(new User()));
+        assertFalse(validator.test(new User()));
+        
+        assertEquals(2, calls.get());
+        assertEquals(0, metrics.counter(MetricNames.MEMO_MISSES).getValue());
+    }
+
+    @Test
+    void eviction() {
+        var validator = new MemoizingValidator(rules, 1).metrics(metrics);
+        
+        validator.test(user("a"));
+        validator.test(user("b")); // Only one slot
+        validator.test(user("a"));
+        
+        assertEquals(3, calls.get());
+        assertEquals(2, metrics.counter(MetricNames.MEMO_EVICTIONS).getValue());
+    }
+
+    @Test
+    void clear() {
+        var validator = new MemoizingValidator(rules);
+        validator.test(user("a"));
+        
+        validator.clear();
+        validator.test(user("a"));
+        
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void capacityIsRoundedUp() {
+        assertEquals(1024, new MemoizingValidator(rules, 1000).capacity());
+        assertEquals(1024, new MemoizingValidator(rules, 1024).capacity());
+    }
+
+    @Test
+    void invalidCapacity() {
+        var e = assertThrows(IllegalArgumentException.class, () -> new MemoizingValidator(rules, 0));
+        assertEquals("capacity must be between 1 and 2^30 but was 0", e.getMessage());
+    }
+
+    @Test
+    void withGoodCode() {
+        var users = List.of(testData.users.valid(), testData.users.nameWithSpace(), testData.users.valid());
+        var orders = new ArrayList<Order>();
+        
+        new GoodCode(() -> users, orders::add).validator(new MemoizingValidator(rules)).doSomethingUseful();
+        
+        assertEquals("user=valid\nuser=valid", OrderTestUtils.toString(orders));
+        assertEquals(2, calls.get());
+    }
+
+    private User user(String name) {
+        var result = new User();
+        result.setName(name);
+        return result;
+    }
+}
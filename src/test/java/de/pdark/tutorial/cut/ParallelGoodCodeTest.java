@@ -0,0 +1,110 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+class ParallelGoodCodeTest {
+    TestDataFactory testData = new TestDataFactory();
+    List<Order> orders = new ArrayList<>();
+    
+    /** Same input and output as GoodCodeTest.UserProcessingTest.severalOrders() */
+    @Test
+    void severalOrders() {
+        var users = List.of(testData.users.valid(), testData.users.nameWithSpace(), testData.users.valid2());
+        
+        new ParallelGoodCode(() -> users, orders::add, 4).doSomethingUseful();
+        
+        assertEquals(
+                OrderTestUtils.toString(List.of(testData.orders.valid(), testData.orders.valid2())),
+                OrderTestUtils.toString(orders));
+    }
+    
+    @Test
+    void ordered() {
+        var users = users(10_000);
+        
+        new ParallelGoodCode(() -> users, singleThreaded(orders::add), 4).doSomethingUseful();
+        
+        assertEquals(expected(users), OrderTestUtils.toString(orders));
+    }
+    
+    /** Any order but every valid user exactly once */
+    @Test
+    void unordered() {
+        var users = users(10_000);
+        var metrics = new SimpleMetricsRegistry();
+        
+        new ParallelGoodCode(() -> users, singleThreaded(orders::add), 4).ordered(false).metrics(metrics).doSomethingUseful();
+        
+        orders.sort((a, b) -> Integer.compare(index(a), index(b)));
+        assertEquals(expected(users), OrderTestUtils.toString(orders));
+        assertEquals(orders.size(), metrics.counter(MetricNames.USERS_ACCEPTED).getValue());
+        assertEquals(users.size() - orders.size(), metrics.counter(MetricNames.USERS_REJECTED).getValue());
+    }
+    
+    @Test
+    void validator() {
+        var users = users(100);
+        
+        new ParallelGoodCode(() -> users, singleThreaded(orders::add), 4).validator(user -> true).doSomethingUseful();
+        
+        assertEquals(users.size(), orders.size());
+    }
+    
+    @Test
+    void storeFails() {
+        Consumer<Order> store = order -> {
+            throw new IllegalStateException("Disk full");
+        };
+        
+        var e = assertThrows(IllegalStateException.class, () -> new ParallelGoodCode(() -> users(100), store, 4).doSomethingUseful());
+        assertEquals("Disk full", e.getMessage());
+    }
+
+    /** Fails when two threads call the store at the same time */
+    private Consumer<Order> singleThreaded(Consumer<Order> store) {
+        var active = new AtomicInteger();
+        return order -> {
+            if (active.incrementAndGet() != 1) {
+                throw new IllegalStateException("Store was called concurrently");
+            }
+            store.accept(order);
+            active.decrementAndGet();
+        };
+    }
+
+    private List<User> users(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> {
+                    var user = new User();
+                    user.setName(i % 5 == 0 ? "user " + i : "user" + i);
+                    return user;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private String expected(List<User> users) {
+        return users.stream()
+                .filter(GoodCode.VALID_ORDER)
+                .map(it -> "user=" + it.getName())
+                .collect(Collectors.joining("\n"));
+    }
+
+    private int index(Order order) {
+        return Integer.parseInt(order.getUser().getName().substring("user".length()));
+    }
+}
@@ -0,0 +1,137 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.database.PreparePreparedStatement;
+import de.pdark.tutorial.cut.model.User;
+
+class PartitionedFetchUsersTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+
+    @Test
+    void emptyTable() {
+        var tool = new PartitionedFetchUsers(database.dataSource(), 4).ordered(true);
+        assertEquals("", UserTestUtils.toString(tool.get()));
+    }
+    
+    /** Same input and output as FetchUsersTest.singleUser() */
+    @Test
+    void singleUser() {
+        User valid = testData.users.valid();
+        var dataSource = database
+                .prepare(insertUser(valid))
+                .dataSource();
+        
+        var tool = new PartitionedFetchUsers(dataSource, 4);
+        assertEquals(UserTestUtils.toString(valid), UserTestUtils.toString(tool.get()));
+        assertEquals(0, dataSource.getActiveCount(), "Connections weren't returned");
+    }
+    
+    /** Every row must be read exactly once, including the ones without a name. */
+    @Test
+    void manyUsers() {
+        var expected = new ArrayList<User>();
+        expected.add(new User());
+        for (int i = 0; i < 100; i++) {
+            var user = new User();
+            user.setName(String.format("user%03d", i));
+            expected.add(user);
+        }
+        
+        expected.forEach(it -> database.prepare(insertUser(it)));
+        var tool = new PartitionedFetchUsers(database.dataSource(), 4).ordered(true);
+        
+        assertEquals(UserTestUtils.toString(expected), UserTestUtils.toString(tool.get()));
+        
+        // Make sure the work was actually split
+        assertEquals(List.of("user024", "user049", "user074"), tool.splitPoints());
+    }
+    
+    /** Equal names can end up in two buckets. They must still be read exactly once. */
+    @Test
+    void duplicateNames() {
+        var expected = new ArrayList<User>();
+        for (int i = 0; i < 10; i++) {
+            var user = new User();
+            user.setName(i < 7 ? "same" : "user" + i);
+            expected.add(user);
+        }
+        
+        expected.forEach(it -> database.prepare(insertUser(it)));
+        var tool = new PartitionedFetchUsers(database.dataSource(), 4).ordered(true);
+        
+        assertEquals(UserTestUtils.toString(expected), UserTestUtils.toString(tool.get()));
+    }
+    
+    /** Fewer rows than partitions */
+    @Test
+    void smallTable() {
+        User valid = testData.users.valid();
+        var tool = new PartitionedFetchUsers(database.prepare(insertUser(valid)).dataSource(), 4);
+        
+        assertEquals(List.of(), tool.splitPoints());
+        assertEquals(UserTestUtils.toString(valid), UserTestUtils.toString(tool.get()));
+    }
+    
+    @Test
+    void unordered() {
+        User valid = testData.users.valid();
+        User nameWithSpace = testData.users.nameWithSpace();
+        var dataSource = database
+                .prepare(insertUser(nameWithSpace))
+                .prepare(insertUser(valid))
+                .dataSource();
+        
+        var tool = new PartitionedFetchUsers(dataSource, 3);
+        var actual = tool.get().stream()
+                .map(UserTestUtils::toString)
+                .sorted()
+                .collect(Collectors.joining("\n"));
+        assertEquals(UserTestUtils.toString(Arrays.asList(nameWithSpace, valid)), actual);
+    }
+    
+    @Test
+    void singlePartition() {
+        User valid = testData.users.valid();
+        User valid2 = testData.users.valid2();
+        var dataSource = database
+                .prepare(insertUser(valid2))
+                .prepare(insertUser(valid))
+                .dataSource();
+        
+        var tool = new PartitionedFetchUsers(dataSource, 1).ordered(true);
+        assertEquals(UserTestUtils.toString(List.of(valid, valid2)), UserTestUtils.toString(tool.get()));
+    }
+    
+    @Test
+    void badKeyColumn() {
+        var tool = new PartitionedFetchUsers(database.dataSource(), 2).keyColumn("no_such_column");
+        var e = assertThrows(IllegalStateException.class, tool::get);
+        assertEquals("Unable to query database: select max(no_such_column) from ("
+                + "select no_such_column, ntile(2) over (order by no_such_column) as bucket from users where no_such_column is not null"
+                + ") group by bucket order by bucket", e.getMessage());
+    }
+    
+    @Test
+    void invalidParallelism() {
+        var e = assertThrows(IllegalArgumentException.class, () -> new PartitionedFetchUsers(database.dataSource(), 0));
+        assertEquals("parallelism must be positive but was 0", e.getMessage());
+    }
+
+    private PreparePreparedStatement insertUser(User user) {
+        return new PreparePreparedStatement("insert into users (name) values (?)", user.getName());
+    }
+}
@@ -0,0 +1,195 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+/**
+ * The transform stage is GoodCode, so we don't need to repeat GoodCodeTest.ValidUserTest here.
+ * We only check that the stages are wired correctly and that the pipeline can't get stuck.
+ */
+class PipelinedGoodCodeTest {
+    User user = new User();
+    TestDataFactory testData = new TestDataFactory();
+    List<Order> orders = new CopyOnWriteArrayList<>();
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testNull() {
+        user = null;
+        var tool = create(users(user));
+        assertThrows(
+            NullPointerException.class,
+            () -> tool.doSomethingUseful()
+        );
+    }
+    
+    @Test
+    void noUsers() {
+        var tool = create(users());
+        tool.doSomethingUseful();
+        assertOrders();
+    }
+
+    /** Same input and output as GoodCodeTest.UserProcessingTest.validOrder() */
+    @Test
+    void validOrder() {
+        user = testData.users.valid();
+        var tool = create(users(user));
+        tool.doSomethingUseful();
+        assertOrders(testData.orders.valid());
+    }
+    
+    @Test
+    void severalOrders() {
+        user = testData.users.valid();
+        var user2 = testData.users.valid2();
+        var tool = create(users(user, testData.users.nameWithSpace(), user2));
+        tool.doSomethingUseful();
+        assertOrders(testData.orders.valid(), testData.orders.valid2());
+    }
+    
+    /** The reader must stop when the writer is slow. */
+    @Test
+    void backpressure() throws InterruptedException {
+        var fetched = new AtomicInteger();
+        var storeStarted = new CountDownLatch(1);
+        var unblockStore = new CountDownLatch(1);
+        Supplier<Stream<User>> fetch = () -> manyUsers(100).peek(it -> fetched.incrementAndGet());
+        
+        var tool = PipelinedGoodCode.streaming(fetch, it -> {
+            storeStarted.countDown();
+            await(unblockStore);
+            orders.add(it);
+        }, 1);
+        
+        var thread = new Thread(tool::doSomethingUseful);
+        thread.start();
+        
+        assertTrue(storeStarted.await(10, TimeUnit.SECONDS));
+        Thread.sleep(200); // Give the reader a chance to run ahead
+        
+        // One item in each queue, one in each stage, one which fetch is trying to put
+        assertTrue(fetched.get() <= 6, () -> "Reader wasn't throttled: " + fetched.get());
+        
+        unblockStore.countDown();
+        thread.join(10_000);
+        assertEquals(100, orders.size());
+    }
+    
+    @Test
+    void storeFails() {
+        var closed = new AtomicBoolean();
+        Supplier<Stream<User>> fetch = () -> manyUsers(100).onClose(() -> closed.set(true));
+        
+        var tool = PipelinedGoodCode.streaming(fetch, it -> {
+            throw new IllegalStateException("Store failed for " + it);
+        }, 1);
+        
+        var e = assertThrows(IllegalStateException.class, tool::doSomethingUseful);
+        assertEquals("Store failed for Order(user=User(name=user0))", e.getMessage());
+        assertTrue(closed.get(), "Cursor of the reader wasn't closed");
+    }
+
+    /** With spillTo(), the reader doesn't wait for the writer and the file is gone afterwards. */
+    @Test
+    void spillToDisk() throws InterruptedException, IOException {
+        var fetched = new AtomicInteger();
+        var unblockStore = new CountDownLatch(1);
+        Supplier<Stream<User>> fetch = () -> manyUsers(100).peek(it -> fetched.incrementAndGet());
+        
+        var tool = PipelinedGoodCode.streaming(fetch, it -> {
+            await(unblockStore);
+            orders.add(it);
+        }, 1).spillTo(tempDir, 0);
+        var thread = new Thread(tool::doSomethingUseful);
+        thread.start();
+        
+        var deadline = System.currentTimeMillis() + 10_000;
+        while (fetched.get() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(100, fetched.get(), "Reader had to wait for the writer");
+        
+        unblockStore.countDown();
+        thread.join(10_000);
+        assertEquals(OrderTestUtils.toString(manyUsers(100).map(this::order).toList()), OrderTestUtils.toString(orders));
+        assertNoSpillFiles();
+    }
+    
+    @Test
+    void spillAndStoreFails() throws IOException {
+        var tool = PipelinedGoodCode.streaming(() -> manyUsers(100), it -> {
+            throw new IllegalStateException("Store failed for " + it);
+        }, 1).spillTo(tempDir, 0);
+        
+        var e = assertThrows(IllegalStateException.class, tool::doSomethingUseful);
+        assertEquals("Store failed for Order(user=User(name=user0))", e.getMessage());
+        assertNoSpillFiles();
+    }
+
+    private void assertNoSpillFiles() throws IOException {
+        try (var files = Files.list(tempDir)) {
+            assertEquals("", files.map(Path::toString).collect(Collectors.joining("\n")));
+        }
+    }
+
+    private Order order(User user) {
+        var result = new Order();
+        result.setUser(user);
+        return result;
+    }
+
+    private void assertOrders(Order... expected) {
+        var expectedString = OrderTestUtils.toString(Arrays.asList(expected));
+        var actual = OrderTestUtils.toString(orders);
+        assertEquals(expectedString, actual);
+    }
+
+    private PipelinedGoodCode create(Supplier<List<User>> fetch) {
+        return new PipelinedGoodCode(fetch, orders::add, 1);
+    }
+
+    private Supplier<List<User>> users(User... users) {
+        return () -> Arrays.asList(users);
+    }
+    
+    private Stream<User> manyUsers(int count) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            var result = new User();
+            result.setName("user" + i);
+            return result;
+        });
+    }
+    
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
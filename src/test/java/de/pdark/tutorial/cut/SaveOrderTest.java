@@ -1,11 +1,18 @@
 package de.pdark.tutorial.cut;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
 import java.sql.Connection;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
 import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
 
 class SaveOrderTest {
     @RegisterExtension
@@ -34,5 +41,44 @@ class SaveOrderTest {
                 """,
                 "orders");
     }
-
+    
+    @Test
+    void metrics() {
+        var metrics = new SimpleMetricsRegistry();
+        var tool = new SaveOrder(database.connect()).metrics(metrics);
+        
+        tool.accept(testData.orders.valid());
+        assertThrows(IllegalStateException.class, () -> tool.accept(orderWithLongName()));
+        
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_STORED).getValue());
+        assertEquals(1, metrics.counter(MetricNames.STORE_ERRORS).getValue());
+        assertEquals(2, metrics.timer(MetricNames.SQL_INSERT).getCount()); // Failed inserts take time, too
+    }
+    
+    private Order orderWithLongName() {
+        var user = new User();
+        user.setName("x".repeat(300));
+        var result = new Order();
+        result.setUser(user);
+        return result;
+    }
+    
+    /** Same as validOrder() but with a connection from a pool */
+    @Test
+    void pooled() {
+        var valid = testData.orders.valid();
+        var dataSource = database.dataSource();
+        
+        var tool = new SaveOrder(dataSource);
+        tool.accept(valid);
+        
+        assertEquals(0, dataSource.getActiveCount(), "Connection wasn't returned");
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+    }
 }
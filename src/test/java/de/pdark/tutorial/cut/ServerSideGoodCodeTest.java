@@ -0,0 +1,111 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.User;
+
+class ServerSideGoodCodeTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))")
+        .prepare("create table orders (user_name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+
+    /** Same input as FetchUsersTest.severalUsers(), same output as SaveOrderTest.validOrder() */
+    @Test
+    void validOrder() {
+        var connection = database
+                .prepare("insert into users (name) values (?)", testData.users.valid().getName())
+                .prepare("insert into users (name) values (?)", testData.users.nameWithSpace().getName())
+                .connect();
+        
+        var metrics = new SimpleMetricsRegistry();
+        new ServerSideGoodCode(connection).metrics(metrics).doSomethingUseful();
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_STORED).getValue());
+    }
+    
+    /** The names from TestDataFactory and GoodCodeTest.ValidUserTest */
+    @Test
+    void parityWithTestData() {
+        assertParity(Arrays.asList(
+                testData.users.valid().getName(),
+                testData.users.valid2().getName(),
+                testData.users.nameWithSpace().getName(),
+                null,
+                "",
+                " ",
+                "\r\n\t",
+                "a\tb"
+        ));
+    }
+    
+    /** Random names made from the characters which the rules care about */
+    @Test
+    void parityWithRandomNames() {
+        var alphabet = new String[] { " ", "\t", "\n", "\u0000", "\u001f", "!", "a", "Z", "\u007f", " ", "ä", "　", "😀" };
+        var random = new Random(42); // Fixed seed, so failures can be reproduced
+        
+        var names = new ArrayList<String>();
+        for (int i = 0; i < 5000; i++) {
+            var name = new StringBuilder();
+            var length = random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                name.append(alphabet[random.nextInt(alphabet.length)]);
+            }
+            names.add(name.toString());
+        }
+        
+        assertParity(names);
+    }
+
+    /** Lists every name where Java and SQL disagree */
+    private void assertParity(List<String> names) {
+        var connection = database
+                .prepareRows("insert into users (name) values (?)", names.size(), i -> new Object[] { names.get(i) })
+                .connect();
+        new ServerSideGoodCode(connection).doSomethingUseful();
+        
+        var expected = new StringBuilder("select user_name from orders:\nUSER_NAME");
+        for (var name : names) {
+            var user = new User();
+            user.setName(name);
+            if (GoodCode.VALID_ORDER.test(user)) {
+                expected.append("\n").append(name);
+            }
+        }
+        
+        assertEquals(escape(expected.toString()), escape(database.dumpQuery("select user_name from orders")));
+    }
+
+    /** Make control characters visible in the diff */
+    private String escape(String text) {
+        var result = new StringBuilder();
+        text.chars().forEach(c -> {
+            if (c < ' ' && c != '\n' || c == 0x7f) {
+                result.append(String.format("\\u%04x", c));
+            } else {
+                result.append((char) c);
+            }
+        });
+        return result.toString();
+    }
+}
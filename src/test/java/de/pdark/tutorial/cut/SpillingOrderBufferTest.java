@@ -0,0 +1,216 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+class SpillingOrderBufferTest {
+    @TempDir
+    Path tempDir;
+    TestDataFactory testData = new TestDataFactory();
+    List<Order> orders = new ArrayList<>();
+
+    @Test
+    void inMemory() {
+        try (var buffer = new SpillingOrderBuffer(tempDir, 1000, 1024)) {
+            buffer.accept(testData.orders.valid());
+            buffer.accept(testData.orders.valid2());
+            buffer.finish();
+            
+            assertNull(buffer.file());
+            buffer.drainTo(orders::add);
+        }
+        
+        assertEquals("user=valid\nuser=valid2", OrderTestUtils.toString(orders));
+    }
+
+    @Test
+    void spillWhenBudgetIsUsedUp() {
+        var metrics = new SimpleMetricsRegistry();
+        var budget = 2 * SpillingOrderBuffer.estimateSize(order("user0"));
+        
+        try (var buffer = new SpillingOrderBuffer(tempDir, budget, 1024).metrics(metrics)) {
+            for (int i = 0; i < 10; i++) {
+                buffer.accept(order("user" + i));
+            }
+            buffer.finish();
+            
+            assertEquals(budget, buffer.memoryBytes());
+            assertTrue(Files.exists(buffer.file()));
+            buffer.drainTo(orders::add);
+        }
+        
+        assertEquals(expected(10), OrderTestUtils.toString(orders));
+        assertEquals(8, metrics.counter(MetricNames.ORDERS_SPILLED).getValue());
+    }
+
+    /** Null values and characters which need more than one byte in UTF-8 */
+    @Test
+    void encoding() {
+        var noUser = new Order();
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 1024)) {
+            buffer.accept(noUser);
+            buffer.accept(order(null));
+            buffer.accept(order(""));
+            buffer.accept(order("Grüße, 世界 😀"));
+            buffer.finish();
+            buffer.drainTo(orders::add);
+        }
+        
+        assertEquals(
+            """
+            user=null
+            user=null
+            user=
+            user=Grüße, 世界 😀""",
+            OrderTestUtils.toString(orders));
+        assertNull(orders.get(0).getUser());
+        assertNull(orders.get(1).getUser().getName());
+    }
+
+    /** Small segments, so many orders end up in a different segment than the one before */
+    @Test
+    void segments() {
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 16)) {
+            for (int i = 0; i < 1000; i++) {
+                buffer.accept(order("user" + i));
+            }
+            buffer.finish();
+            buffer.drainTo(orders::add);
+        }
+        
+        assertEquals(expected(1000), OrderTestUtils.toString(orders));
+    }
+
+    /** Writer and reader run at the same time, so the file is drained and reused many times */
+    @Test
+    void concurrent() throws InterruptedException {
+        var budget = 10 * SpillingOrderBuffer.estimateSize(order("user0"));
+        var failure = new AtomicReference<Throwable>();
+        
+        try (var buffer = new SpillingOrderBuffer(tempDir, budget, 64)) {
+            var writer = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    buffer.accept(order("user" + i));
+                }
+                buffer.finish();
+            });
+            writer.setUncaughtExceptionHandler((thread, e) -> failure.set(e));
+            writer.start();
+            
+            buffer.drainTo(orders::add);
+            writer.join(10_000);
+        }
+        
+        assertNull(failure.get());
+        assertEquals(expected(100_000), OrderTestUtils.toString(orders));
+    }
+
+    /**
+     * The store is always a few orders behind, so the file is never empty. Segments which were
+     * read must be written again instead of mapping new ones.
+     */
+    @Test
+    void segmentsAreReused() throws IOException {
+        var count = new int[] { 3 };
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 16)) {
+            for (int i = 0; i < count[0]; i++) {
+                buffer.accept(order("user" + i));
+            }
+            
+            buffer.drainTo(order -> {
+                orders.add(order);
+                if (count[0] < 1000) {
+                    buffer.accept(order("user" + count[0] ++));
+                } else {
+                    buffer.finish();
+                }
+            });
+            
+            assertTrue(buffer.mappedSegments() <= 4, "Too many segments: " + buffer.mappedSegments());
+            assertTrue(Files.size(buffer.file()) <= 4 * 16, "File too big: " + Files.size(buffer.file()));
+        }
+        
+        assertEquals(expected(1000), OrderTestUtils.toString(orders));
+    }
+
+    @Test
+    void fileIsDeletedOnClose() {
+        Path file;
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 1024)) {
+            buffer.accept(testData.orders.valid());
+            file = buffer.file();
+            assertTrue(Files.exists(file));
+        }
+        
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void fileIsDeletedWhenStoreFails() {
+        Path file;
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 1024)) {
+            buffer.accept(testData.orders.valid());
+            buffer.finish();
+            file = buffer.file();
+            
+            var e = assertThrows(IllegalStateException.class, () -> buffer.drainTo(it -> {
+                throw new IllegalStateException("Store failed");
+            }));
+            assertEquals("Store failed", e.getMessage());
+        }
+        
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void acceptAfterFinish() {
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 1024)) {
+            buffer.finish();
+            
+            var e = assertThrows(IllegalStateException.class, () -> buffer.accept(testData.orders.valid()));
+            assertEquals("Buffer doesn't accept orders anymore\norder: Order(user=User(name=valid))", e.getMessage());
+        }
+    }
+
+    @Test
+    void orderTooBig() {
+        try (var buffer = new SpillingOrderBuffer(tempDir, 0, 16)) {
+            var e = assertThrows(IllegalArgumentException.class, () -> buffer.accept(order("a name which is too long")));
+            assertEquals("Order needs 28 bytes but segmentSize is only 16\norder: Order(user=User(name=a name which is too long))", e.getMessage());
+        }
+    }
+
+    private String expected(int count) {
+        var result = new ArrayList<Order>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(order("user" + i));
+        }
+        return OrderTestUtils.toString(result);
+    }
+
+    private Order order(String name) {
+        var user = new User();
+        user.setName(name);
+        var result = new Order();
+        result.setUser(user);
+        return result;
+    }
+}
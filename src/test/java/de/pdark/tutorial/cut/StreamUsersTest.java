@@ -0,0 +1,171 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.database.PreparePreparedStatement;
+import de.pdark.tutorial.cut.model.User;
+
+class StreamUsersTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+    
+    /** All statements which StreamUsers created so we can check that the cursor was closed. */
+    List<PreparedStatement> statements = new ArrayList<>();
+
+    @Test
+    void emptyTable() {
+        var connection = database.connect();
+        assertUsers(Collections.emptyList(), connection);
+    }
+    
+    /** Same input and output as FetchUsersTest.severalUsers(). */
+    @Test
+    void severalUsers() {
+        User valid = testData.users.valid();
+        User nameWithSpace = testData.users.nameWithSpace();
+        
+        var connection = database
+                .prepare(insertUser(valid))
+                .prepare(insertUser(nameWithSpace))
+                .connect();
+        assertUsers(
+                Arrays.asList(valid, nameWithSpace),
+                connection
+        );
+    }
+    
+    @Test
+    void stopEarly() throws SQLException {
+        var connection = track(database
+                .prepare(insertUser(testData.users.valid()))
+                .prepare(insertUser(testData.users.valid2()))
+                .connect());
+        
+        var tool = new StreamUsers(connection, 1);
+        try (var users = tool.get()) {
+            var first = users.limit(1).collect(Collectors.toList());
+            assertEquals(UserTestUtils.toString(testData.users.valid()), UserTestUtils.toString(first));
+        }
+        
+        assertCursorClosed();
+    }
+    
+    @Test
+    void processingFails() throws SQLException {
+        var connection = track(database
+                .prepare(insertUser(testData.users.valid()))
+                .connect());
+        
+        var tool = new StreamUsers(connection);
+        var e = assertThrows(IllegalStateException.class, () -> {
+            try (var users = tool.get()) {
+                users.forEach(it -> {
+                    throw new IllegalStateException("Store failed for " + it);
+                });
+            }
+        });
+        assertEquals("Store failed for User(name=valid)", e.getMessage());
+        
+        assertCursorClosed();
+    }
+    
+    @Test
+    void borrowedConnection() throws SQLException {
+        var pool = database
+                .prepare(insertUser(testData.users.valid()))
+                .dataSource();
+        var dataSource = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class },
+                (proxy, method, args) -> {
+                    try {
+                        var result = method.invoke(pool, args);
+                        return result instanceof Connection ? track((Connection) result) : result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        
+        var tool = new StreamUsers(dataSource);
+        var autoCommit = new ArrayList<Boolean>();
+        try (var users = tool.get()) {
+            users.forEach(it -> {
+                try {
+                    autoCommit.add(statements.get(0).getConnection().getAutoCommit());
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        
+        assertEquals("[false]", autoCommit.toString());
+        assertCursorClosed();
+        assertEquals(0, pool.getActiveCount());
+        try (var connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit(), "Auto-commit wasn't restored");
+        }
+    }
+    
+    @Test
+    void invalidFetchSize() {
+        var connection = database.connect();
+        var e = assertThrows(IllegalArgumentException.class, () -> new StreamUsers(connection, 0));
+        assertEquals("fetchSize must be positive but was 0", e.getMessage());
+    }
+
+    private PreparePreparedStatement insertUser(User user) {
+        return new PreparePreparedStatement("insert into users (name) values (?)", user.getName());
+    }
+
+    private void assertUsers(List<User> expected, Connection connection) {
+        var tool = new StreamUsers(connection);
+        try (var users = tool.get()) {
+            var actual = UserTestUtils.toString(users.collect(Collectors.toList()));
+            assertEquals(UserTestUtils.toString(expected), actual);
+        }
+    }
+    
+    private void assertCursorClosed() throws SQLException {
+        assertEquals(1, statements.size());
+        assertTrue(statements.get(0).isClosed(), "Statement wasn't closed");
+    }
+
+    /** Remember all statements which are created with this connection. */
+    private Connection track(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    try {
+                        var result = method.invoke(connection, args);
+                        if (result instanceof PreparedStatement) {
+                            statements.add((PreparedStatement) result);
+                        }
+                        return result;
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
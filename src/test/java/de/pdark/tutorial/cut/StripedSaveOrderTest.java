@@ -0,0 +1,129 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+class StripedSaveOrderTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table orders (user_name varchar(256) not null)");
+    TestDataFactory testData = new TestDataFactory();
+
+    /** Same input and output as SaveOrderTest.validOrder(). */
+    @Test
+    void validOrder() {
+        var dataSource = database.dataSource();
+        
+        try (var tool = new StripedSaveOrder(dataSource, 2)) {
+            tool.accept(testData.orders.valid());
+        }
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+        assertEquals(0, dataSource.getActiveCount(), "Connections weren't returned");
+    }
+    
+    @Test
+    void flushIsBarrier() {
+        try (var tool = new StripedSaveOrder(database.dataSource(), 4, 1000)) {
+            for (int i = 0; i < 100; i++) {
+                tool.accept(order("user" + (i % 10)));
+            }
+            tool.flush();
+            
+            assertEquals(
+                    """
+                    select count(*), count(distinct user_name) from orders:
+                    COUNT(*),COUNT(DISTINCT USER_NAME)
+                    100,10""",
+                    database.dumpQuery("select count(*), count(distinct user_name) from orders"));
+        }
+    }
+    
+    @Test
+    void firstFailure() {
+        var dataSource = database.dataSource();
+        var tool = new StripedSaveOrder(dataSource, 2, 10);
+        tool.accept(testData.orders.valid());
+        tool.accept(order(null));
+        
+        var e = assertThrows(IllegalStateException.class, tool::flush);
+        assertEquals(
+                """
+                Stripe 0 of 2 failed: Unable to store 1 of 2 orders in database
+                sql: insert into orders(user_name) values (?)
+                 order #1: Order(user=User(name=null))""",
+                e.getMessage());
+        
+        var e2 = assertThrows(IllegalStateException.class, () -> tool.accept(testData.orders.valid2()));
+        assertEquals(e, e2);
+        
+        var e3 = assertThrows(IllegalStateException.class, tool::close);
+        assertEquals(e, e3);
+        assertEquals(0, dataSource.getActiveCount(), "Connections weren't returned");
+    }
+    
+    @Test
+    void flushAfterClose() {
+        var tool = new StripedSaveOrder(database.dataSource(), 2);
+        tool.close();
+        tool.close(); // Must be harmless
+        
+        var e = assertThrows(IllegalStateException.class, tool::flush);
+        assertEquals("Writer was closed", e.getMessage());
+    }
+    
+    /** A writer thread which dies must not make flush() wait forever */
+    @Test
+    void writerDies() {
+        var dataSource = database.dataSource();
+        var tool = new StripedSaveOrder(dataSource, 1, 10);
+        var user = new User() {
+            @Override
+            public String getName() {
+                if (Thread.currentThread().getName().startsWith("order-writer-")) {
+                    throw new OutOfMemoryError("Simulated");
+                }
+                return "valid";
+            }
+        };
+        var order = new Order();
+        order.setUser(user);
+        tool.accept(order);
+        
+        var e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IllegalStateException.class, tool::flush));
+        assertEquals("Stripe 0 of 1 failed: Simulated", e.getMessage());
+        
+        assertThrows(IllegalStateException.class, tool::close);
+        assertEquals(0, dataSource.getActiveCount(), "Connections weren't returned");
+    }
+    
+    @Test
+    void invalidStripes() {
+        var e = assertThrows(IllegalArgumentException.class, () -> new StripedSaveOrder(database.dataSource(), 0));
+        assertEquals("stripes must be positive but was 0", e.getMessage());
+    }
+
+    private Order order(String name) {
+        var user = new User();
+        user.setName(name);
+        var result = new Order();
+        result.setUser(user);
+        return result;
+    }
+}
@@ -0,0 +1,191 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.metrics.MetricNames;
+import de.pdark.tutorial.cut.metrics.SimpleMetricsRegistry;
+import de.pdark.tutorial.cut.model.Order;
+
+class TransactionalSaveOrderTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table orders (user_name varchar(256))");
+    TestDataFactory testData = new TestDataFactory();
+    SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+
+    @Test
+    void commitEveryN() throws SQLException {
+        var connection = database.connect();
+        
+        try (var tool = new TransactionalSaveOrder(connection, new BatchSaveOrder(connection)).chunkSize(2).metrics(metrics)) {
+            tool.accept(testData.orders.valid());
+            assertEquals("", committed());
+            
+            tool.accept(testData.orders.valid2());
+            assertEquals("valid\nvalid2", committed());
+            
+            tool.accept(testData.orders.valid());
+        }
+        
+        assertEquals("valid\nvalid\nvalid2", committed());
+        assertEquals(2, metrics.counter(MetricNames.CHUNKS_COMMITTED).getValue());
+        assertEquals(2, metrics.timer(MetricNames.SQL_COMMIT).getCount());
+        assertFalse(connection.getAutoCommit(), "Auto-commit of the extension must be restored");
+    }
+    
+    @Test
+    void commitAfterMaxAge() throws SQLException {
+        var connection = database.connect();
+        
+        try (var tool = new TransactionalSaveOrder(connection, new SaveOrder(connection)).maxAge(Duration.ZERO)) {
+            tool.accept(testData.orders.valid());
+            assertEquals("valid", committed());
+        }
+    }
+    
+    /** Only the second chunk is sent again */
+    @Test
+    void retryFailedChunk() throws SQLException {
+        var connection = database.connect();
+        var save = new SaveOrder(connection);
+        var calls = new int[1];
+        Consumer<Order> store = order -> {
+            calls[0] ++;
+            save.accept(order);
+            if (calls[0] == 3) {
+                throw deadlock();
+            }
+        };
+        
+        try (var tool = new TransactionalSaveOrder(connection, store).chunkSize(2).metrics(metrics)) {
+            tool.accept(testData.orders.valid());
+            tool.accept(testData.orders.valid2());
+            tool.accept(testData.orders.valid());
+            tool.accept(testData.orders.valid2());
+        }
+        
+        assertEquals("valid\nvalid\nvalid2\nvalid2", committed());
+        assertEquals(5, calls[0]);
+        assertEquals(1, metrics.counter(MetricNames.CHUNKS_RETRIED).getValue());
+        // [valid, valid2], [valid] after the retry, [valid2] on close()
+        assertEquals(3, metrics.counter(MetricNames.CHUNKS_COMMITTED).getValue());
+    }
+    
+    @Test
+    void giveUp() throws SQLException {
+        var connection = database.connect();
+        var save = new SaveOrder(connection);
+        Consumer<Order> store = order -> {
+            save.accept(order);
+            if ("valid2".equals(order.getUser().getName())) {
+                throw deadlock();
+            }
+        };
+        
+        var tool = new TransactionalSaveOrder(connection, store).chunkSize(1).attempts(2).metrics(metrics);
+        tool.accept(testData.orders.valid());
+        
+        var e = assertThrows(IllegalStateException.class, () -> tool.accept(testData.orders.valid2()));
+        assertEquals(
+                "Unable to store chunk of 1 orders after 2 attempts\n"
+                + "first order: Order(user=User(name=valid2))\n"
+                + "last order: Order(user=User(name=valid2))",
+                e.getMessage());
+        assertEquals("Deadlock", e.getCause().getMessage());
+        
+        tool.close();
+        assertEquals("valid", committed());
+        assertEquals(1, metrics.counter(MetricNames.STORE_ERRORS).getValue());
+    }
+
+    /** Sending the chunk again wouldn't help */
+    @Test
+    void noRetryForPermanentErrors() throws SQLException {
+        var connection = database.connect();
+        var calls = new int[1];
+        Consumer<Order> store = order -> {
+            calls[0] ++;
+            throw new IllegalStateException("Disk full");
+        };
+        
+        var tool = new TransactionalSaveOrder(connection, store).metrics(metrics);
+        
+        var e = assertThrows(IllegalStateException.class, () -> tool.accept(testData.orders.valid()));
+        assertEquals(
+                "Unable to store chunk of 1 orders after 1 attempts\n"
+                + "first order: Order(user=User(name=valid))\n"
+                + "last order: Order(user=User(name=valid))",
+                e.getMessage());
+        assertEquals(1, calls[0]);
+        assertEquals(0, metrics.counter(MetricNames.CHUNKS_RETRIED).getValue());
+        tool.close();
+    }
+    
+    /**
+     * The failed order was already in the JDBC batch and DedupSaveOrder had seen it. Both have to
+     * forget the chunk on rollback, or the retry would store it twice or not at all.
+     */
+    @Test
+    void retryWithDedupAndBatch() throws SQLException {
+        var connection = database.connect();
+        var calls = new int[1];
+        var batch = new BatchSaveOrder(connection) {
+            @Override
+            public void accept(Order order) {
+                super.accept(order);
+                if (++ calls[0] == 2) {
+                    throw deadlock();
+                }
+            }
+        };
+        var dedup = new DedupSaveOrder(connection, batch).metrics(metrics);
+        
+        try (var tool = new TransactionalSaveOrder(connection, dedup).chunkSize(3).metrics(metrics)) {
+            tool.accept(testData.orders.valid());
+            tool.accept(testData.orders.valid2());
+            tool.accept(testData.orders.valid());
+        }
+        
+        assertEquals("valid\nvalid2", committed());
+        assertEquals(1, metrics.counter(MetricNames.CHUNKS_RETRIED).getValue());
+        assertEquals(1, metrics.counter(MetricNames.ORDERS_DUPLICATE).getValue());
+    }
+    
+    @Test
+    void isTransient() {
+        assertTrue(TransactionalSaveOrder.isTransient(deadlock()));
+        assertTrue(TransactionalSaveOrder.isTransient(new IllegalStateException(new SQLException("Serialization failure", "40001"))));
+        assertFalse(TransactionalSaveOrder.isTransient(new IllegalStateException(new SQLException("Value too long", "22001"))));
+        assertFalse(TransactionalSaveOrder.isTransient(new IllegalStateException("Disk full")));
+    }
+
+    private IllegalStateException deadlock() {
+        return new IllegalStateException("Deadlock", new SQLTransactionRollbackException("Deadlock", "40001"));
+    }
+
+    /** What other connections can see */
+    private String committed() throws SQLException {
+        try (var connection = database.dataSource().getConnection();
+            var stmt = connection.prepareStatement("select user_name from orders order by user_name");
+            var ps = stmt.executeQuery()
+        ) {
+            var result = new StringBuilder();
+            while (ps.next()) {
+                result.append(result.length() == 0 ? "" : "\n").append(ps.getString(1));
+            }
+            return result.toString();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package de.pdark.tutorial.cut;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import de.pdark.tutorial.cut.model.User;
+
+class ValidOrderRulesTest {
+    User user = new User();
+
+    @Test
+    void hasName() {
+        assertFalse(ValidOrderRules.HAS_NAME.test(user));
+        
+        user.setName(" ");
+        assertTrue(ValidOrderRules.HAS_NAME.test(user));
+    }
+
+    @Test
+    void noSpace() {
+        assertFalse(ValidOrderRules.NO_SPACE.test(user));
+        
+        user.setName("a b");
+        assertFalse(ValidOrderRules.NO_SPACE.test(user));
+        
+        user.setName("\t");
+        assertTrue(ValidOrderRules.NO_SPACE.test(user));
+    }
+
+    @Test
+    void notBlank() {
+        assertFalse(ValidOrderRules.NOT_BLANK.test(user));
+        
+        user.setName("\r\n\t");
+        assertFalse(ValidOrderRules.NOT_BLANK.test(user));
+        
+        user.setName("a b");
+        assertTrue(ValidOrderRules.NOT_BLANK.test(user));
+    }
+
+    /** The rule set and the single pass in GoodCode.isValidName() must always agree */
+    @Test
+    void sameAsIsValidName() {
+        var rules = ValidOrderRules.create().sampleEvery(1).reorderEvery(100);
+        var random = new Random(42);
+        var alphabet = "ab \t\r\nä";
+        
+        for (int i = 0; i < 5000; i++) {
+            var length = random.nextInt(5);
+            var sb = new StringBuilder();
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            user.setName(random.nextInt(20) == 0 ? null : sb.toString());
+            
+            assertEquals(GoodCode.isValidName(user.getName()), rules.test(user), () -> "[" + user.getName() + "]");
+        }
+    }
+}
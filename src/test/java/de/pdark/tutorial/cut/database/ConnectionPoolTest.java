@@ -0,0 +1,235 @@
+package de.pdark.tutorial.cut.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+class ConnectionPoolTest {
+    
+    ConnectionPool pool;
+
+    @BeforeEach
+    void createPool(TestInfo info) {
+        var url = "jdbc:h2:mem:" + getClass().getSimpleName() + "_" + info.getTestMethod().orElseThrow().getName();
+        pool = new ConnectionPool(url, "sa", "");
+    }
+    
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+    
+    @Test
+    void reuseConnection() throws SQLException {
+        Connection first;
+        try (var connection = pool.getConnection()) {
+            first = connection.unwrap(Connection.class);
+        }
+        
+        try (var connection = pool.getConnection()) {
+            assertSame(first, connection.unwrap(Connection.class));
+        }
+        assertEquals(1, pool.getIdleCount());
+    }
+    
+    @Test
+    void maxSize() throws SQLException {
+        pool.maxSize(1).borrowTimeout(Duration.ofMillis(10));
+        
+        try (var connection = pool.getConnection()) {
+            var e = assertThrows(SQLTransientConnectionException.class, () -> pool.getConnection());
+            assertTrue(e.getMessage().startsWith("Timeout after PT0.01S waiting for a connection"), e::getMessage);
+            assertFalse(connection.isClosed());
+        }
+        
+        try (var connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1), "Connection must be available again");
+            assertEquals(1, pool.getActiveCount());
+        }
+    }
+    
+    @Test
+    void replaceBrokenConnection() throws SQLException {
+        Connection first;
+        try (var connection = pool.getConnection()) {
+            first = connection.unwrap(Connection.class);
+        }
+        first.close(); // Simulate network problem
+        
+        try (var connection = pool.getConnection()) {
+            assertNotSame(first, connection.unwrap(Connection.class));
+            assertTrue(connection.isValid(1));
+        }
+    }
+    
+    @Test
+    void rollbackOnReturn() throws SQLException {
+        try (var connection = pool.getConnection()) {
+            connection.createStatement().execute("create table test (id int)");
+        }
+        
+        try (var connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            connection.createStatement().execute("insert into test (id) values (1)");
+        }
+        
+        try (var connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+            try (var rs = connection.createStatement().executeQuery("select count(*) from test")) {
+                rs.next();
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+    
+    @Test
+    void restoreSettingsOnReturn() throws SQLException {
+        try (var connection = pool.getConnection()) {
+            connection.createStatement().execute("create schema other");
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            connection.setSchema("OTHER");
+        }
+        
+        try (var connection = pool.getConnection()) {
+            assertFalse(connection.isReadOnly());
+            assertEquals(Connection.TRANSACTION_READ_COMMITTED, connection.getTransactionIsolation());
+            assertEquals("PUBLIC", connection.getSchema());
+        }
+        assertEquals(1, pool.getIdleCount());
+    }
+    
+    @Test
+    void evictIdle() throws SQLException, InterruptedException {
+        pool.idleTimeout(Duration.ofMillis(1));
+        pool.getConnection().close();
+        
+        Thread.sleep(10);
+        pool.evictIdle();
+        
+        assertEquals(0, pool.getIdleCount());
+    }
+    
+    @Test
+    void detectLeaks() throws SQLException, InterruptedException {
+        pool.leakThreshold(Duration.ofMillis(1));
+        
+        var connection = pool.getConnection();
+        try {
+            Thread.sleep(10);
+            assertEquals(1, pool.checkLeaks());
+        } finally {
+            connection.close();
+        }
+        assertEquals(0, pool.checkLeaks());
+    }
+    
+    @Test
+    void useAfterClose() throws SQLException {
+        var connection = pool.getConnection();
+        connection.close();
+        connection.close(); // Must be harmless
+        
+        assertTrue(connection.isClosed());
+        var e = assertThrows(SQLException.class, () -> connection.createStatement());
+        assertTrue(e.getMessage().startsWith("Connection was returned to the pool"), e::getMessage);
+        assertEquals(1, pool.getIdleCount());
+    }
+    
+    /** A driver bug must not leave the pool without its lock or without the slot */
+    @Test
+    void validationThrows() throws SQLException {
+        var driver = new BrokenValidationDriver();
+        DriverManager.registerDriver(driver);
+        var broken = new ConnectionPool(BrokenValidationDriver.PREFIX + "validationThrows", "sa", "")
+                .maxSize(1)
+                .borrowTimeout(Duration.ofMillis(10));
+        try {
+            broken.getConnection().close();
+            
+            var e = assertThrows(IllegalStateException.class, () -> broken.getConnection());
+            assertEquals("isValid() failed", e.getMessage());
+            assertEquals(0, broken.getIdleCount());
+            
+            broken.getConnection().close(); // The slot is free again
+        } finally {
+            broken.close();
+            DriverManager.deregisterDriver(driver);
+        }
+    }
+    
+    /** Connects to H2 but isValid() always throws */
+    private static class BrokenValidationDriver implements Driver {
+        static final String PREFIX = "jdbc:brokenValidation:";
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            
+            var connection = DriverManager.getConnection("jdbc:h2:mem:" + url.substring(PREFIX.length()), info);
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                if (method.getName().equals("isValid")) {
+                    throw new IllegalStateException("isValid() failed");
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith(PREFIX);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -3,15 +3,26 @@ package de.pdark.tutorial.cut.database;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.extension.AfterEachCallback;
@@ -24,13 +35,27 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
 
     private static final Logger log = LoggerFactory.getLogger(DatabaseConnectionExtension.class);
     
-    private Connection connection;
-    private String testClass;
-    private String dbName;
+    /** Number of rows per JDBC batch when preparing the database */
+    private static final int BATCH_SIZE = 1000;
+    
+    /** Script files with the content of a prepared database. The key is created by snapshotKey(). */
+    private static final Map<String, Path> snapshots = new ConcurrentHashMap<>();
+    private static final AtomicInteger snapshotCounter = new AtomicInteger();
+    
+    /** Makes the database names unique when several tests with the same name run at the same time */
+    private static final AtomicInteger invocationCounter = new AtomicInteger();
+    
+    /**
+     * The state of the running test. JUnit creates a new test instance and with it a new
+     * extension for every test method, so a plain field is enough. Threads which the test
+     * starts can use connect() and dataSource(), too.
+     */
+    private Invocation current;
     private String user = "sa";
     private String password = "";
     private Map<String, String> options = new LinkedHashMap<>();
     private List<PreparePreparedStatement> prepare = new ArrayList<>();
+    private boolean reuseSnapshot;
 
     static {
         try {
@@ -40,10 +65,32 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
         }
     }
     
+    private static class Invocation {
+        private final String name;
+        private final String dbName;
+        private Connection connection;
+        private ConnectionPool dataSource;
+        
+        Invocation(String testClass, String testMethod) {
+            this.name = testClass + "." + testMethod;
+            this.dbName = testClass + "_" + testMethod + "_" + invocationCounter.incrementAndGet();
+        }
+        
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    
     @Override
     public void beforeEach(ExtensionContext context) throws Exception {
-        testClass = context.getTestClass().map(it -> it.getSimpleName() + ".").orElse("");
-        dbName = context.getRequiredTestMethod().getName();
+        var testClass = context.getTestClass().map(Class::getSimpleName).orElse("Test");
+        current = new Invocation(testClass, context.getRequiredTestMethod().getName());
+    }
+    
+    private Invocation invocation() {
+        assertNotNull(current, "No test is running");
+        return current;
     }
     
     public DatabaseConnectionExtension option(String name, String value) {
@@ -52,21 +99,40 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
     }
     
     public Connection connect() {
-        if (connection == null) { // Not multi-threaded, so this is safe
-            connection = configure(doConnect());
+        var invocation = invocation();
+        if (invocation.connection == null) {
+            invocation.connection = configure(doConnect());
             
-            prepareDatabase();
+            if (reuseSnapshot) {
+                restoreSnapshot(invocation.connection);
+            } else {
+                prepareDatabase(invocation.connection);
+            }
             commit();
         }
         
-        return connection;
+        return invocation.connection;
+    }
+
+    /** A pool of connections to the same database as connect(). Prepares the database, if necessary. */
+    public ConnectionPool dataSource() {
+        connect();
+        
+        var invocation = invocation();
+        if (invocation.dataSource == null) {
+            log.debug("{}: Creating connection pool", invocation);
+            invocation.dataSource = new ConnectionPool(url(), user, password);
+        }
+        
+        return invocation.dataSource;
     }
 
     public void commit() {
+        var connection = invocation().connection;
         assertNotNull(connection, "please call connect(), first");
         
         try {
-            log.debug("{}{}: COMMIT", testClass, dbName);
+            log.debug("{}: COMMIT", invocation());
             connection.commit();
         } catch (SQLException e) {
             throw new DatabaseException("Failed to commit transaction for " + connection, e);
@@ -83,29 +149,133 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
         return conn;
     }
 
-    private void prepareDatabase() {
-        prepare.forEach(it -> {
-            log.debug("{}{}: Preparing database: {}", testClass, dbName, it);
-            var sql = it.getSql();
-            try (var stmt = connection.prepareStatement(sql)) {
-                var values = it.getValues();
-                for (int i = 0; i < values.length; i++) {
-                    stmt.setObject(i + 1, values[i]);
-                }
+    /**
+     * Prepare the database only once for all tests with the same prepare statements and options.
+     * 
+     * The first test fills a template database and saves it with SCRIPT. All tests then load
+     * this script into their own fresh database. Each test still has its own database, changes
+     * are never visible in other tests.
+     * 
+     * This pays off for big fixtures that are used by many tests since RUNSCRIPT doesn't need a
+     * round trip per row.
+     */
+    public DatabaseConnectionExtension reuseSnapshot() {
+        reuseSnapshot = true;
+        return this;
+    }
+
+    private void restoreSnapshot(Connection connection) {
+        var script = snapshots.computeIfAbsent(snapshotKey(), it -> createSnapshot());
+        log.debug("{}: Restoring snapshot {}", invocation(), script);
+        
+        var sql = "runscript from '" + quote(script) + "'";
+        try (var stmt = connection.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing SQL: " + sql, e);
+        }
+    }
+
+    private Path createSnapshot() {
+        var url = "jdbc:h2:mem:snapshot" + snapshotCounter.incrementAndGet() + collectOptions();
+        log.debug("{}: Creating snapshot in {}", invocation(), url);
+        
+        try (var template = configure(DriverManager.getConnection(url, user, password))) {
+            prepareDatabase(template);
+            template.commit();
+            
+            var script = Files.createTempFile("snapshot", ".sql");
+            script.toFile().deleteOnExit();
+            try (var stmt = template.createStatement()) {
+                stmt.execute("script to '" + quote(script) + "'");
+            }
+            return script;
+        } catch (SQLException | IOException e) {
+            throw new DatabaseException("Unable to create snapshot\nurl=" + url, e);
+        }
+    }
+
+    private String quote(Path path) {
+        return path.toString().replace("'", "''");
+    }
+
+    /** Same options and prepare statements = same database content */
+    private String snapshotKey() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(collectOptions().getBytes(StandardCharsets.UTF_8));
+            for (var it : prepare) {
+                digest.update((it.getSql() + "\0" + Arrays.deepToString(it.getValues()) + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new DatabaseException("SHA-256 is missing", e);
+        }
+    }
+
+    /**
+     * Consecutive statements with the same SQL are sent as one JDBC batch. That makes seeding
+     * large fixtures fast, see prepareRows() and prepareCsv().
+     */
+    private void prepareDatabase(Connection connection) {
+        int start = 0;
+        while (start < prepare.size()) {
+            var sql = prepare.get(start).getSql();
+            int end = start + 1;
+            while (end < prepare.size() && prepare.get(end).getSql().equals(sql)) {
+                end ++;
+            }
+            
+            var group = prepare.subList(start, end);
+            if (group.size() == 1) {
+                log.debug("{}: Preparing database: {}", invocation(), group.get(0));
+            } else {
+                log.debug("{}: Preparing database: {} ({} rows)", invocation(), sql, group.size());
+            }
+            execute(connection, sql, group);
+            
+            start = end;
+        }
+    }
 
-                if (!stmt.execute()) {
-                    throw new SQLException("execute() return false");
+    private void execute(Connection connection, String sql, List<PreparePreparedStatement> group) {
+        try (var stmt = connection.prepareStatement(sql)) {
+            if (group.size() == 1) {
+                setValues(stmt, group.get(0));
+                stmt.execute();
+                return;
+            }
+            
+            int count = 0;
+            for (var it : group) {
+                setValues(stmt, it);
+                stmt.addBatch();
+                
+                count ++;
+                if (count % BATCH_SIZE == 0) {
+                    stmt.executeBatch();
                 }
-            } catch (SQLException e) {
-                new DatabaseException("Error excecuting SQL: " + sql, e);
             }
-        });
-        
+            stmt.executeBatch();
+        } catch (SQLException e) {
+            throw new DatabaseException("Error executing SQL: " + sql, e);
+        }
+    }
+
+    private void setValues(PreparedStatement stmt, PreparePreparedStatement statement) throws SQLException {
+        var values = statement.getValues();
+        for (int i = 0; i < values.length; i++) {
+            stmt.setObject(i + 1, values[i]);
+        }
+    }
+
+    private String url() {
+        return "jdbc:h2:mem:" + invocation().dbName + collectOptions();
     }
 
     Connection doConnect() {
-        var url = "jdbc:h2:mem:" + dbName + collectOptions();
-        log.debug("{}{}: Connecting to {}", testClass, dbName, url);
+        var url = url();
+        log.debug("{}: Connecting to {}", invocation(), url);
 
         try {
             return DriverManager.getConnection(url, user, password);
@@ -124,6 +294,28 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
         return this;
     }
     
+    /**
+     * Execute sql count times. The generator gets the row number (0 ... count - 1) and returns the
+     * values for the parameters. The rows are sent as JDBC batches.
+     */
+    public DatabaseConnectionExtension prepareRows(String sql, int count, IntFunction<Object[]> generator) {
+        for (int i = 0; i < count; i++) {
+            prepare.add(new PreparePreparedStatement(sql, generator.apply(i)));
+        }
+        return this;
+    }
+    
+    /**
+     * Load a CSV file into a table without a round trip per row. The first line of the file
+     * must contain the column names. Use "classpath:/..." to load a file from the test resources.
+     */
+    public DatabaseConnectionExtension prepareCsv(String tableName, String fileName) {
+        // H2 doesn't allow parameters for the file name
+        var sql = String.format("insert into %s select * from csvread('%s')", tableName, fileName.replace("'", "''"));
+        prepare.add(new PreparePreparedStatement(sql));
+        return this;
+    }
+    
     private String collectOptions() {
         if (options.isEmpty()) {
             return "";
@@ -137,8 +329,18 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
 
     @Override
     public void afterEach(ExtensionContext context) throws Exception {
-        if (connection != null) {
-            connection.close();
+        var invocation = current;
+        current = null;
+        if (invocation == null) {
+            return;
+        }
+        
+        if (invocation.dataSource != null) {
+            invocation.dataSource.close();
+        }
+        
+        if (invocation.connection != null) {
+            invocation.connection.close();
         }
     }
 
@@ -161,10 +363,26 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
         return result.toString();
     }
     
+    /** Like dumpQuery(String) but only the columns which mapper reads, in the order of mapper.columns() */
+    public String dumpQuery(String sql, RowMapper<?> mapper) {
+        var result = new StringBuilder();
+        result.append(sql).append(":\n");
+
+        log.debug("{}: dumpQuery sql={}", invocation(), sql);
+        try (var stmt = connect().prepareStatement(sql)) {
+            try (var ps = stmt.executeQuery()) {
+                dumpResultSet(result, ps, mapper);
+            }
+        } catch (SQLException e) {
+            throw new DatabaseException("Unable to execute " + sql, e);
+        }
+        return result.toString();
+    }
+    
     private void dumpQuery(StringBuilder result, String sql) {
         result.append(sql).append(":\n");
 
-        log.debug("{}{}: dumpQuery sql={}", testClass, dbName, sql);
+        log.debug("{}: dumpQuery sql={}", invocation(), sql);
         try (var stmt = connect().prepareStatement(sql)) {
             try (var ps = stmt.executeQuery()) {
                 dumpResultSet(result, ps);
@@ -189,6 +407,33 @@ public class DatabaseConnectionExtension implements BeforeEachCallback, AfterEac
         }
     }
 
+    /** Resolves the columns with the mapper, so the dump shows exactly what the mapper sees. */
+    public void dumpResultSet(StringBuilder result, ResultSet ps, RowMapper<?> mapper) throws SQLException {
+        var metaData = ps.getMetaData();
+        var indices = mapper.resolve(metaData);
+        
+        var delim = "";
+        for (int index : indices) {
+            result.append(delim).append(metaData.getColumnName(index));
+            delim = ",";
+        }
+        
+        int count = 0;
+        while (ps.next()) {
+            result.append("\n");
+            delim = "";
+            for (int index : indices) {
+                result.append(delim).append(ps.getObject(index));
+                delim = ",";
+            }
+            count ++;
+        }
+        
+        if (count == 0) {
+            result.append("\n*no data*");
+        }
+    }
+
     private void dumpHeader(StringBuilder result, ResultSet ps) throws SQLException {
         var metaData = ps.getMetaData();
         var delim = "";
@@ -0,0 +1,68 @@
+package de.pdark.tutorial.cut.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/** Each test changes the data. That must not be visible in the other tests. */
+class DatabaseConnectionExtensionTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))")
+        .prepareRows("insert into users (name) values (?)", 1000, i -> new Object[] { "user" + i })
+        .reuseSnapshot();
+
+    @Test
+    void deleteUsers() throws Exception {
+        assertUserCount(1000);
+        
+        try (var stmt = database.connect().createStatement()) {
+            stmt.execute("delete from users");
+        }
+        database.commit();
+        assertUserCount(0);
+    }
+
+    @Test
+    void addUser() throws Exception {
+        assertUserCount(1000);
+        
+        try (var stmt = database.connect().createStatement()) {
+            stmt.execute("insert into users (name) values ('new')");
+        }
+        database.commit();
+        assertUserCount(1001);
+    }
+    
+    @Test
+    void differentScript() throws Exception {
+        database.prepare("insert into users (name) values (?)", "one more");
+        assertUserCount(1001);
+    }
+
+    /** Same method name as the outer addUser() but a different database, the outer users must not show up */
+    @Nested
+    class SameMethodNameTest {
+        @RegisterExtension
+        DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+            .prepare("create table users (name varchar(256))");
+
+        @Test
+        void addUser() throws Exception {
+            try (var stmt = database.connect().createStatement()) {
+                stmt.execute("insert into users (name) values ('nested')");
+            }
+            database.commit();
+            
+            assertEquals("select * from users:\nNAME\nnested", database.dumpQuery("select * from users"));
+        }
+    }
+
+    private void assertUserCount(int expected) {
+        assertEquals(
+                "select count(*) from users:\nCOUNT(*)\n" + expected,
+                database.dumpQuery("select count(*) from users"));
+    }
+}
@@ -0,0 +1,212 @@
+package de.pdark.tutorial.cut.flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import de.pdark.tutorial.cut.BatchSaveOrder;
+import de.pdark.tutorial.cut.FetchUsers;
+import de.pdark.tutorial.cut.GoodCode;
+import de.pdark.tutorial.cut.OrderTestUtils;
+import de.pdark.tutorial.cut.StreamUsers;
+import de.pdark.tutorial.cut.database.DatabaseConnectionExtension;
+import de.pdark.tutorial.cut.model.Order;
+import de.pdark.tutorial.cut.model.User;
+
+class FlowsTest {
+    @RegisterExtension
+    DatabaseConnectionExtension database = new DatabaseConnectionExtension()
+        .prepare("create table users (name varchar(256))")
+        .prepare("create table orders (user_name varchar(256))");
+
+    /** Same input as FetchUsersTest.severalUsers(), same output as SaveOrderTest.validOrder() */
+    @Test
+    void validOrder() {
+        var connection = database
+                .prepare("insert into users (name) values ('valid')")
+                .prepare("insert into users (name) values ('a b')")
+                .connect();
+        
+        try (var store = new BatchSaveOrder(connection)) {
+            Flows.run(new StreamPublisher<>(new StreamUsers(connection)), new ConsumerSubscriber<>(store));
+        }
+        
+        database.assertTableContent(
+                """
+                select * from orders:
+                USER_NAME
+                valid
+                """,
+                "orders");
+    }
+    
+    /** The publisher never runs ahead of the store by more than the batch size */
+    @Test
+    void demand() {
+        var sent = new int[1];
+        var valid = new int[1];
+        var stored = new ArrayList<Order>();
+        var maxInFlight = new int[1];
+        
+        var fetch = new StreamPublisher<User>(() -> IntStream.range(0, 1000).mapToObj(i -> {
+            sent[0] ++;
+            if (i % 3 == 0) {
+                return user("a b");
+            }
+            valid[0] ++;
+            return user("user" + i);
+        }));
+        var store = new ConsumerSubscriber<Order>(order -> {
+            stored.add(order);
+            maxInFlight[0] = Math.max(maxInFlight[0], valid[0] - stored.size());
+        }, 10);
+        
+        Flows.run(fetch, store);
+        
+        assertEquals(1000, sent[0]);
+        assertEquals(666, stored.size());
+        assertTrue(maxInFlight[0] < 10, "Too many orders in flight: " + maxInFlight[0]);
+    }
+    
+    /** The cursor must be closed when the store fails */
+    @Test
+    void storeFails() {
+        var closed = new AtomicBoolean();
+        var fetch = new StreamPublisher<User>(() -> IntStream.range(0, 1000).mapToObj(i -> user("user" + i)).onClose(() -> closed.set(true)));
+        var store = new ConsumerSubscriber<Order>(order -> {
+            throw new IllegalStateException("Disk full");
+        });
+        
+        var e = assertThrows(IllegalStateException.class, () -> Flows.run(fetch, store));
+        assertEquals("Disk full", e.getMessage());
+        assertTrue(closed.get(), "Stream wasn't closed");
+    }
+    
+    /** Existing Supplier and Consumer code keeps working */
+    @Test
+    void adapters() {
+        var connection = database
+                .prepare("insert into users (name) values ('valid')")
+                .prepare("insert into users (name) values ('a b')")
+                .connect();
+        
+        var orders = new ArrayList<Order>();
+        var fetch = Flows.toSupplier(StreamPublisher.ofList(new FetchUsers(connection)));
+        try (var store = new SubscriberConsumer<Order>(new ConsumerSubscriber<>(orders::add, 1))) {
+            new GoodCode(fetch, store).doSomethingUseful();
+        }
+        
+        assertEquals("user=valid", OrderTestUtils.toString(orders));
+    }
+    
+    /** The supplier must not ask for everything at once */
+    @Test
+    void boundedDemand() {
+        var requests = new ArrayList<Long>();
+        var fetch = new StreamPublisher<User>(() -> IntStream.range(0, 1000).mapToObj(i -> user("user" + i)));
+        Flow.Publisher<User> recording = subscriber -> fetch.subscribe(new Flow.Subscriber<User>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                        requests.add(n);
+                        subscription.request(n);
+                    }
+
+                    @Override
+                    public void cancel() {
+                        subscription.cancel();
+                    }
+                });
+            }
+
+            @Override
+            public void onNext(User item) {
+                subscriber.onNext(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscriber.onError(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                subscriber.onComplete();
+            }
+        });
+        
+        assertEquals(1000, Flows.toSupplier(recording).get().size());
+        assertEquals(ConsumerSubscriber.DEFAULT_BATCH_SIZE, requests.stream().mapToLong(it -> it).max().getAsLong());
+    }
+    
+    @Test
+    void validator() {
+        var fetch = StreamPublisher.<User>ofList(() -> List.of(user("valid"), user("a b")));
+        var orders = new ArrayList<Order>();
+        
+        Flows.run(fetch, user -> true, new ConsumerSubscriber<>(orders::add));
+        
+        assertEquals("user=valid\nuser=a b", OrderTestUtils.toString(orders));
+    }
+    
+    /** The error for request(0) comes from the thread which sends the items, never while onNext() runs */
+    @Test
+    void invalidRequest() {
+        var signals = new ArrayList<String>();
+        var consumer = new SubscriberConsumer<String>(new Flow.Subscriber<String>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(0);
+                signals.add("requested");
+            }
+
+            @Override
+            public void onNext(String item) {
+                signals.add("onNext " + item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add("onError " + throwable.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+                signals.add("onComplete");
+            }
+        });
+        
+        var e = assertThrows(IllegalStateException.class, () -> consumer.accept("a"));
+        assertTrue(e.getCause() instanceof IllegalArgumentException, "Unexpected cause: " + e.getCause());
+        consumer.close();
+        
+        assertEquals("[requested, onError request() needs a positive number but was 0]", signals.toString());
+    }
+    
+    @Test
+    void empty() {
+        var fetch = StreamPublisher.<User>ofList(() -> List.of());
+        var orders = new ArrayList<Order>();
+        
+        Flows.run(fetch, new ConsumerSubscriber<>(orders::add));
+        
+        assertEquals(List.of(), orders);
+    }
+
+    private User user(String name) {
+        var result = new User();
+        result.setName(name);
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package de.pdark.tutorial.cut.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class SimpleMetricsRegistryTest {
+    
+    SimpleMetricsRegistry metrics = new SimpleMetricsRegistry();
+
+    @Test
+    void counter() {
+        metrics.counter("a").increment();
+        metrics.counter("a").add(2);
+        
+        assertEquals(3, metrics.counter("a").getValue());
+        assertSame(metrics.counter("a"), metrics.counter("a"));
+    }
+    
+    @Test
+    void timer() {
+        var timer = metrics.timer("t");
+        timer.record(0);
+        timer.record(100);
+        timer.record(1000);
+        timer.record(-5); // Clock went backwards
+        
+        assertEquals(
+                "t: count=4, total=0ms, p50=0ns, p99=1000ns, max=1000ns",
+                metrics.toString());
+        assertEquals(127, timer.percentileNanos(75));
+    }
+    
+    @Test
+    void emptyTimer() {
+        assertEquals(0, metrics.timer("t").percentileNanos(99));
+    }
+    
+    @Test
+    void sortedOutput() {
+        metrics.counter("b").increment();
+        metrics.timer("a").record(1);
+        
+        assertEquals(
+                """
+                a: count=1, total=0ms, p50=1ns, p99=1ns, max=1ns
+                b: 1""",
+                metrics.toString());
+    }
+    
+    @Test
+    void noop() {
+        var timer = MetricsRegistry.NOOP.timer("t");
+        assertEquals(0, timer.start());
+        timer.stop(0);
+        MetricsRegistry.NOOP.counter("c").increment();
+    }
+}
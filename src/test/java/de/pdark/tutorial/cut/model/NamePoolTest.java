@@ -0,0 +1,24 @@
+package de.pdark.tutorial.cut.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class NamePoolTest {
+
+    @Test
+    void poolIsBounded() {
+        var pool = new NamePool(1);
+        
+        assertNull(pool.intern(null));
+        assertSame(pool.intern("a"), pool.intern(new String("a")));
+        
+        var b = new String("b");
+        assertSame(b, pool.intern(b));
+        assertNotSame(b, pool.intern(new String("b")));
+        assertEquals(1, pool.size());
+    }
+}
@@ -0,0 +1,128 @@
+package de.pdark.tutorial.cut.rules;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RuleSetTest {
+    Rule<Integer> positive = new Rule<>("positive", it -> it > 0);
+    Rule<Integer> even = new Rule<>("even", it -> it % 2 == 0);
+
+    @Test
+    void passesOnlyWhenAllRulesPass() {
+        var rules = RuleSet.of(positive, even);
+        
+        assertTrue(rules.test(2));
+        assertFalse(rules.test(3));
+        assertFalse(rules.test(-2));
+    }
+
+    @Test
+    void rulesWhichRejectMoreMoveToTheFront() {
+        var rules = RuleSet.of(positive, even).sampleEvery(1).reorderEvery(100);
+        
+        for (int i = 1; i <= 99; i++) {
+            rules.test(i);
+        }
+        assertEquals(List.of(positive, even), rules.getRules());
+        
+        rules.test(100); // Triggers the reorder
+        assertEquals(List.of(even, positive), rules.getRules());
+    }
+
+    @Test
+    void rulesWithoutRejectionsKeepTheirOrder() {
+        var always = new Rule<Integer>("always", it -> true);
+        var rules = RuleSet.of(positive, always);
+        
+        rules.test(1);
+        rules.reorder();
+        
+        assertEquals(List.of(positive, always), rules.getRules());
+    }
+
+    @Test
+    void resultDoesNotDependOnOrder() {
+        var rules = RuleSet.of(positive, even).sampleEvery(1).reorderEvery(7);
+        
+        for (int i = -50; i <= 50; i++) {
+            assertEquals(i > 0 && i % 2 == 0, rules.test(i), () -> "Rules: " + rules.getRules());
+        }
+    }
+
+    /** Every rule sees every sample, no matter where it is in the list */
+    @Test
+    void statistics() {
+        var rules = RuleSet.of(positive, even).sampleEvery(1);
+        rules.test(1);
+        rules.test(2);
+        rules.test(-1);
+        
+        assertEquals(
+            """
+            positive: sampled=3, rejected=1, avg=?ns
+            even: sampled=3, rejected=2, avg=?ns""",
+            rules.toString().replaceAll("avg=\\d+ns", "avg=?ns"));
+    }
+
+    @Test
+    void noSamples() {
+        var rules = RuleSet.of(positive, even).sampleEvery(Integer.MAX_VALUE);
+        
+        assertFalse(rules.test(-1));
+        
+        assertEquals(
+            """
+            positive: sampled=0, rejected=0, avg=?ns
+            even: sampled=0, rejected=0, avg=?ns""",
+            rules.toString());
+    }
+
+    /** The setters may be called while other threads test values */
+    @Test
+    void concurrent() throws InterruptedException {
+        var rules = RuleSet.of(positive, even).sampleEvery(4).reorderEvery(64);
+        var errors = new AtomicInteger();
+        var threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            var thread = new Thread(() -> {
+                for (int i = -5000; i <= 5000; i++) {
+                    if (rules.test(i) != (i > 0 && i % 2 == 0)) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        rules.sampleEvery(1);
+        for (var thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    void invalidSampleEvery() {
+        var rules = RuleSet.of(positive);
+        
+        var e = assertThrows(IllegalArgumentException.class, () -> rules.sampleEvery(0));
+        assertEquals("sampleEvery must be positive but was 0", e.getMessage());
+    }
+
+    @Test
+    void invalidReorderEvery() {
+        var rules = RuleSet.of(positive);
+        
+        var e = assertThrows(IllegalArgumentException.class, () -> rules.reorderEvery(-1));
+        assertEquals("reorderEvery must be positive but was -1", e.getMessage());
+    }
+}